@@ -0,0 +1,90 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.repository.BulkCancellation;
+import scheduler.repository.Repositories;
+import scheduler.reservation.Reservation;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * reserve and cancel end to end, from dispatch to the store, against a SeededStore.
+ *
+ * Both change the store, so they are measured in batches of BATCH invocations (JMH single-shot mode) and the
+ * store is put back between batches outside of the measurement: the reservations of a batch are cancelled
+ * after it, and the appointments a cancel batch needs are booked before it. The scores are the time of one
+ * whole batch.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = BookingBenchmarks.BATCH)
+@Measurement(iterations = 10, batchSize = BookingBenchmarks.BATCH)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BookingBenchmarks {
+
+    static final int BATCH = 1000;
+
+    @State(Scope.Thread)
+    public static class Reserves {
+        private int next;
+
+        // gives back the caregivers and doses the batch took
+        @TearDown(Level.Iteration)
+        public void cancelBatch(SeededStore store) throws SQLException {
+            Repositories.appointments().cancelAll(new BulkCancellation.BulkCancellationBuilder(store.day(0),
+                    store.lastDay()).vaccine(SeededStore.BOOKING_VACCINE).build(), appointment -> { });
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cancels {
+        private final int[] patients = new int[BATCH];
+        private final String[] ids = new String[BATCH];
+        // every booking is made by the next patient for the next day
+        private int patient;
+        private int next;
+
+        @Setup(Level.Iteration)
+        public void bookBatch(SeededStore store) throws SQLException {
+            int booked = 0;
+            next = 0;
+            for (int attempt = 0; booked < BATCH && attempt < 10 * BATCH; attempt++) {
+                patient++;
+                Reservation reservation = Repositories.appointments().reserve(store.patient(patient),
+                        store.day(patient), SeededStore.BOOKING_VACCINE);
+                if (reservation.isConfirmed()) {
+                    patients[booked] = patient;
+                    ids[booked] = Integer.toString(reservation.getAppointmentId());
+                    booked++;
+                }
+            }
+            if (booked < BATCH) {
+                throw new IllegalStateException("Only " + booked + " of " + BATCH + " appointments could be booked");
+            }
+        }
+    }
+
+    @Benchmark
+    public void reserve(SeededStore store, Reserves reserves) {
+        int i = reserves.next++;
+        store.dispatch(i, "reserve", store.day(i).toString(), SeededStore.BOOKING_VACCINE);
+    }
+
+    @Benchmark
+    public void cancel(SeededStore store, Cancels cancels) {
+        int i = cancels.next++;
+        store.dispatch(cancels.patients[i], "cancel", cancels.ids[i]);
+    }
+}
@@ -0,0 +1,48 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.Scheduler;
+import scheduler.Session;
+import scheduler.command.CommandRegistry;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting input lines into tokens and dispatching them. The session is logged out, so the commands stop at
+ * their login checks and never reach the store.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Thread)
+public class CommandBenchmarks {
+
+    private static final String[] LINES = {"reserve 2099-01-01 " + SeededStore.VACCINE, "show_appointments",
+            "logout", "no_such_command"};
+
+    private final CommandRegistry registry = Scheduler.getRegistry();
+    private final Session session = new Session(null, new PrintStream(OutputStream.nullOutputStream()), false);
+    private int next;
+
+    @Benchmark
+    public String[] tokenize() {
+        return CommandRegistry.tokenize(LINES[next++ % LINES.length]);
+    }
+
+    @Benchmark
+    public void tokenizeDispatch() {
+        registry.dispatch(session, CommandRegistry.tokenize(LINES[next++ % LINES.length]));
+    }
+}
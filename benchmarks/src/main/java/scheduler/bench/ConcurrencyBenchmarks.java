@@ -0,0 +1,144 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import scheduler.db.Concurrency;
+import scheduler.db.ConnectionManager;
+import scheduler.repository.Repositories;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dose updates under each Concurrency strategy. Every thread alternately adds and takes one dose through the
+ * vaccine repository, as add_doses and reserve do, either on a vaccine of its own (low contention) or on one
+ * vaccine all threads share (high contention).
+ *
+ * The doses are checked after every trial, which fails unless each vaccine holds its starting doses plus the
+ * successful increments minus the successful decrements. The vaccines are created with a random prefix and
+ * deleted afterwards. The strategies only apply to the SQL Server database, so the jmh task leaves these
+ * benchmarks out when it runs against the in-process backend.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(16)
+public class ConcurrencyBenchmarks {
+
+    private static final int STARTING_DOSES = 1_000_000;
+
+    @State(Scope.Benchmark)
+    public static class Vaccines {
+
+        @Param({"ATOMIC", "OPTIMISTIC", "PESSIMISTIC"})
+        public Concurrency.Strategy strategy;
+
+        @Param({"low", "high"})
+        public String contention;
+
+        private final String prefix = "cc" + Integer.toHexString(ThreadLocalRandom.current().nextInt()) + "_";
+        private final Map<String, LongAdder> changes = new HashMap<>();
+        private final AtomicInteger threads = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void create(BenchmarkParams params) throws SQLException {
+            Concurrency.setStrategy(strategy);
+            int count = contention.equals("high") ? 1 : params.getThreads();
+            Map<String, Integer> doses = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                doses.put(vaccine(i), STARTING_DOSES);
+                changes.put(vaccine(i), new LongAdder());
+            }
+            Repositories.vaccines().addAll(doses);
+        }
+
+        // every thread updates a vaccine of its own, or the shared one
+        String pick() {
+            return vaccine(contention.equals("high") ? 0 : threads.getAndIncrement());
+        }
+
+        @TearDown(Level.Trial)
+        public void verify() throws SQLException {
+            try {
+                for (Map.Entry<String, LongAdder> change : changes.entrySet()) {
+                    Integer doses = Repositories.vaccines().findDoses(change.getKey());
+                    long expected = STARTING_DOSES + change.getValue().sum();
+                    if (doses == null || doses != expected) {
+                        throw new IllegalStateException(change.getKey() + " has " + doses + " doses, expected " +
+                                expected);
+                    }
+                }
+            } finally {
+                delete();
+            }
+        }
+
+        private void delete() throws SQLException {
+            ConnectionManager cm = new ConnectionManager();
+            Connection con = cm.createConnection();
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            try {
+                PreparedStatement statement = cm.prepareStatement("DELETE FROM Vaccines WHERE Name LIKE ?");
+                statement.setString(1, prefix + "%");
+                statement.executeUpdate();
+            } finally {
+                cm.closeConnection();
+            }
+        }
+
+        private String vaccine(int i) {
+            return prefix + "v" + i;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Worker {
+        private String vaccine;
+        private boolean increase;
+
+        @Setup(Level.Trial)
+        public void pick(Vaccines vaccines) {
+            vaccine = vaccines.pick();
+        }
+    }
+
+    @Benchmark
+    public Integer changeDose(Vaccines vaccines, Worker worker) throws SQLException {
+        worker.increase = !worker.increase;
+        try {
+            Integer doses = worker.increase ? Repositories.vaccines().increase(worker.vaccine, 1) :
+                    Repositories.vaccines().decrease(worker.vaccine, 1);
+            if (doses != null) {
+                vaccines.changes.get(worker.vaccine).add(worker.increase ? 1 : -1);
+            }
+            return doses;
+        } catch (Concurrency.ConflictException e) {
+            // the optimistic strategy gave up after its retries, the doses are unchanged
+            return null;
+        }
+    }
+}
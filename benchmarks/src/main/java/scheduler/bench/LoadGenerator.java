@@ -0,0 +1,450 @@
+package scheduler.bench;
+
+import scheduler.Scheduler;
+import scheduler.Session;
+import scheduler.command.CommandRegistry;
+import scheduler.db.ReplicaSet;
+import scheduler.metrics.LatencyHistogram;
+import scheduler.model.Appointment;
+import scheduler.model.Caregiver;
+import scheduler.model.DoseCoalescer;
+import scheduler.model.Patient;
+import scheduler.repository.Repositories;
+import scheduler.util.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generates concurrent reservation traffic through the scheduler's own commands and then checks that the
+ * bookings are consistent.
+ *
+ * Setup creates synthetic caregivers and patients with create_caregiver/create_patient, uploads a range of
+ * availability for every caregiver and adds doses with add_doses. The load phase then runs reserve, cancel
+ * and search_caregiver_schedule from many threads for a fixed time, in a weighted mix and optionally at a
+ * fixed rate. With a rate, latency is measured from when each command was due to start, so a stalled
+ * system shows up as latency instead of as fewer commands sent.
+ *
+ * Afterwards it checks that no caregiver is booked twice on a date or both booked and available, that no
+ * vaccine has negative doses, and that remaining doses plus booked appointments add up to the doses added
+ * (and likewise for availability). Names are prefixed with a random run id and dates are picked from a
+ * random window far in the future, so runs against a shared database do not see each other's data.
+ * Storage=memory runs everything in process.
+ *
+ * Usage: java scheduler.bench.LoadGenerator [--caregivers n] [--patients n] [--days n] [--vaccines n]
+ *        [--doses n] [--threads n] [--duration seconds] [--rate commands/s] [--mix reserve:cancel:search]
+ */
+public class LoadGenerator {
+
+    private enum Operation {
+        RESERVE,
+        CANCEL,
+        SEARCH
+    }
+
+    private static final String password = "Load#2024pw";
+    private static final Pattern appointmentId = Pattern.compile("Appointment ID (\\d+)");
+
+    private int caregivers = 100;
+    private int patients = 1000;
+    private int days = 30;
+    private int vaccines = 3;
+    private int doses = -1;
+    private int threads = 16;
+    private int durationSeconds = 30;
+    private int rate = 0;
+    private int[] mix = {50, 20, 30};
+
+    private final String prefix = "load" + Integer.toString(ThreadLocalRandom.current().nextInt(1 << 30), 36) + "_";
+    private final LocalDate firstDay = LocalDate.of(2200, 1, 1)
+            .plusDays(ThreadLocalRandom.current().nextInt(800 * 365));
+    private final CommandRegistry registry = Scheduler.getRegistry();
+
+    private Patient[] patientAccounts;
+    private final Queue<int[]> booked = new ConcurrentLinkedQueue<>();
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final AtomicLong ticket = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Usage: LoadGenerator [--caregivers n] [--patients n] [--days n] [--vaccines n] " +
+                    "[--doses n] [--threads n] [--duration seconds] [--rate commands/s] " +
+                    "[--mix reserve:cancel:search]");
+            return;
+        }
+        boolean ok = generator.run();
+        System.exit(ok ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--caregivers":
+                    caregivers = Integer.parseInt(value);
+                    break;
+                case "--patients":
+                    patients = Integer.parseInt(value);
+                    break;
+                case "--days":
+                    days = Integer.parseInt(value);
+                    break;
+                case "--vaccines":
+                    vaccines = Integer.parseInt(value);
+                    break;
+                case "--doses":
+                    doses = Integer.parseInt(value);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--duration":
+                    durationSeconds = Integer.parseInt(value);
+                    break;
+                case "--rate":
+                    rate = Integer.parseInt(value);
+                    break;
+                case "--mix":
+                    String[] weights = value.split(":");
+                    if (weights.length != 3) {
+                        throw new IllegalArgumentException("The mix needs three weights");
+                    }
+                    for (int w = 0; w < 3; w++) {
+                        mix[w] = Integer.parseInt(weights[w]);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (caregivers <= 0 || patients <= 0 || vaccines <= 0 || threads <= 0 || durationSeconds <= 0
+                || days <= 0 || days > 366 || rate < 0 || mix[0] < 0 || mix[1] < 0 || mix[2] < 0
+                || mix[0] + mix[1] + mix[2] == 0) {
+            throw new IllegalArgumentException("Invalid load parameters");
+        }
+        // by default only half the caregiver slots can get a dose, so both kinds of rejection happen
+        if (doses < 0) {
+            doses = Math.max(1, caregivers * days / vaccines / 2);
+        }
+    }
+
+    private boolean run() throws Exception {
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram(operation.name().toLowerCase(Locale.ROOT)));
+        }
+        System.out.printf("Run %s: %d caregivers, %d patients, %d days from %s, %d vaccines with %d doses each%n",
+                prefix, caregivers, patients, days, firstDay, vaccines, doses);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            setUp(pool);
+            System.out.printf("Set up in %.1f s%n", (System.nanoTime() - start) / 1e9);
+
+            long begin = System.nanoTime();
+            long end = begin + durationSeconds * 1_000_000_000L;
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(pool.submit(() -> work(begin, end)));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            report((System.nanoTime() - begin) / 1e9);
+        } finally {
+            pool.shutdownNow();
+        }
+        return check();
+    }
+
+    private void setUp(ExecutorService pool) throws Exception {
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < caregivers; i++) {
+            String caregiver = caregiver(i);
+            tasks.add(pool.submit(() -> {
+                expect(command(null, "create_caregiver " + caregiver + " " + password), "Created user");
+                Session session = new Session(null, discard(), false);
+                session.loginCaregiver(new Caregiver.CaregiverGetter(caregiver, password).get());
+                expect(command(session, "upload_availability " + firstDay + " " + firstDay.plusDays(days - 1)),
+                        "Availability uploaded for " + days + " dates");
+                return null;
+            }));
+        }
+        for (int i = 0; i < patients; i++) {
+            String patient = patient(i);
+            tasks.add(pool.submit(() -> {
+                expect(command(null, "create_patient " + patient + " " + password), "Created user");
+                return null;
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+
+        Session admin = new Session(null, discard(), false);
+        admin.loginCaregiver(new Caregiver.CaregiverGetter(caregiver(0), password).get());
+        for (int v = 0; v < vaccines; v++) {
+            expect(command(admin, "add_doses " + vaccine(v) + " " + doses), "Doses updated!");
+        }
+
+        // the load phase skips login, the hashes are only needed to build the logged-in user
+        byte[] salt = Util.generateSalt();
+        byte[] hash = Util.generateHash(password, salt);
+        patientAccounts = new Patient[patients];
+        for (int i = 0; i < patients; i++) {
+            patientAccounts[i] = new Patient.PatientBuilder(patient(i), salt, hash).build();
+        }
+    }
+
+    private void work(long begin, long end) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8);
+        Random random = ThreadLocalRandom.current();
+        int total = mix[0] + mix[1] + mix[2];
+        while (true) {
+            long due;
+            if (rate > 0) {
+                due = begin + ticket.getAndIncrement() * 1_000_000_000L / rate;
+                if (due >= end) {
+                    return;
+                }
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            } else {
+                due = System.nanoTime();
+                if (due >= end) {
+                    return;
+                }
+            }
+
+            int pick = random.nextInt(total);
+            Operation operation = pick < mix[0] ? Operation.RESERVE :
+                    pick < mix[0] + mix[1] ? Operation.CANCEL : Operation.SEARCH;
+            buffer.reset();
+            String outcome;
+            switch (operation) {
+                case RESERVE:
+                    outcome = reserve(random, out, buffer);
+                    break;
+                case CANCEL:
+                    outcome = cancel(out, buffer);
+                    break;
+                default:
+                    outcome = search(random, out, buffer);
+            }
+            if (outcome == null) {
+                continue;
+            }
+            latencies.get(operation).record(System.nanoTime() - due);
+            outcomes.computeIfAbsent(operation.name().toLowerCase(Locale.ROOT) + " " + outcome,
+                    key -> new LongAdder()).increment();
+        }
+    }
+
+    private String reserve(Random random, PrintStream out, ByteArrayOutputStream buffer) {
+        int patient = random.nextInt(patients);
+        Session session = new Session(null, out, false);
+        session.loginPatient(patientAccounts[patient]);
+        registry.dispatch(session, new String[]{"reserve", day(random.nextInt(days)).toString(),
+                vaccine(random.nextInt(vaccines))});
+        String output = buffer.toString(StandardCharsets.UTF_8);
+        Matcher matcher = appointmentId.matcher(output);
+        if (matcher.find()) {
+            booked.add(new int[]{patient, Integer.parseInt(matcher.group(1))});
+            return "confirmed";
+        }
+        if (output.startsWith("No caregiver is available")) {
+            return "no caregiver";
+        }
+        if (output.startsWith("Not enough available doses")) {
+            return "no doses";
+        }
+        return "error";
+    }
+
+    // returns null when nothing is booked yet
+    private String cancel(PrintStream out, ByteArrayOutputStream buffer) {
+        int[] appointment = booked.poll();
+        if (appointment == null) {
+            return null;
+        }
+        Session session = new Session(null, out, false);
+        session.loginPatient(patientAccounts[appointment[0]]);
+        registry.dispatch(session, new String[]{"cancel", Integer.toString(appointment[1])});
+        return buffer.toString(StandardCharsets.UTF_8).startsWith("Successfully canceled") ? "cancelled" : "error";
+    }
+
+    private String search(Random random, PrintStream out, ByteArrayOutputStream buffer) {
+        Session session = new Session(null, out, false);
+        session.loginPatient(patientAccounts[random.nextInt(patients)]);
+        registry.dispatch(session, new String[]{"search_caregiver_schedule", day(random.nextInt(days)).toString()});
+        return buffer.toString(StandardCharsets.UTF_8).startsWith("Please try again") ? "error" : "ok";
+    }
+
+    private void report(double seconds) {
+        long commands = 0;
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram.Snapshot snapshot = latencies.get(operation).snapshot();
+            commands += snapshot.getCount();
+            System.out.printf(Locale.ROOT, "%-8s %8d  %9.1f/s  p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms%n",
+                    latencies.get(operation).getName(), snapshot.getCount(), snapshot.getCount() / seconds,
+                    snapshot.getPercentile(0.50) / 1e6, snapshot.getPercentile(0.99) / 1e6,
+                    snapshot.getPercentile(0.999) / 1e6, snapshot.getMax() / 1e6);
+        }
+        System.out.printf(Locale.ROOT, "%d commands in %.1f s, %.1f/s with %d threads%n", commands, seconds,
+                commands / seconds, threads);
+        new TreeMap<>(outcomes).forEach((outcome, count) -> System.out.println("  " + outcome + ": " + count));
+    }
+
+    private boolean check() throws SQLException {
+        DoseCoalescer coalescer = DoseCoalescer.getInstance();
+        if (coalescer != null) {
+            coalescer.flush();
+        }
+        // read replicas may only serve the check once they have every booking
+        ReplicaSet.readAfter(System.nanoTime());
+        List<String> violations = new ArrayList<>();
+
+        // what is still available, per date
+        Map<Date, Set<String>> available = new HashMap<>();
+        for (int d = 0; d < days; d++) {
+            Set<String> ours = new HashSet<>();
+            for (String caregiver : Repositories.availability().caregivers(day(d))) {
+                if (caregiver.startsWith(prefix)) {
+                    ours.add(caregiver);
+                }
+            }
+            available.put(day(d), ours);
+        }
+
+        // every caregiver at most once per date, and never both booked and available
+        Map<Date, Integer> bookedPerDate = new HashMap<>();
+        Map<String, Integer> bookedPerVaccine = new HashMap<>();
+        int caregiverAppointments = 0;
+        for (int i = 0; i < caregivers; i++) {
+            Set<Date> dates = new HashSet<>();
+            for (Appointment appointment : Repositories.appointments().findByCaregiver(caregiver(i))) {
+                caregiverAppointments++;
+                if (!dates.add(appointment.getTime())) {
+                    violations.add(caregiver(i) + " is booked twice on " + appointment.getTime());
+                }
+                Set<String> stillAvailable = available.get(appointment.getTime());
+                if (stillAvailable != null && stillAvailable.contains(appointment.getCaregiver())) {
+                    violations.add(caregiver(i) + " is booked and available on " + appointment.getTime());
+                }
+                bookedPerDate.merge(appointment.getTime(), 1, Integer::sum);
+                bookedPerVaccine.merge(appointment.getVaccineName().toLowerCase(Locale.ROOT), 1, Integer::sum);
+            }
+        }
+
+        // every patient appointment is with one of this run's caregivers
+        int patientAppointments = 0;
+        for (int i = 0; i < patients; i++) {
+            patientAppointments += Repositories.appointments().findByPatient(patient(i)).size();
+        }
+        if (patientAppointments != caregiverAppointments) {
+            violations.add(patientAppointments + " patient appointments but " + caregiverAppointments +
+                    " caregiver appointments");
+        }
+
+        // remaining availability plus bookings adds up to what was uploaded
+        for (int d = 0; d < days; d++) {
+            int total = available.get(day(d)).size() + bookedPerDate.getOrDefault(day(d), 0);
+            if (total != caregivers) {
+                violations.add(day(d) + ": " + total + " available and booked slots instead of " + caregivers);
+            }
+        }
+
+        // remaining doses plus bookings adds up to what was added, and never goes negative
+        for (int v = 0; v < vaccines; v++) {
+            Integer left = Repositories.vaccines().findDoses(vaccine(v));
+            int used = bookedPerVaccine.getOrDefault(vaccine(v).toLowerCase(Locale.ROOT), 0);
+            if (left == null) {
+                violations.add(vaccine(v) + " is missing");
+            } else if (left < 0) {
+                violations.add(vaccine(v) + " has " + left + " doses");
+            } else if (left + used != doses) {
+                violations.add(vaccine(v) + ": " + left + " doses left and " + used + " booked instead of " + doses);
+            }
+        }
+
+        System.out.println(caregiverAppointments + " appointments booked at the end");
+        for (String violation : violations) {
+            System.out.println("VIOLATION: " + violation);
+        }
+        System.out.println(violations.isEmpty() ? "PASS" : "FAIL");
+        return violations.isEmpty();
+    }
+
+    // runs one command line in the session, or in a fresh logged-out one, and returns its output
+    private String command(Session session, String line) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8);
+        Session target = session == null ? new Session(null, out, false) : session.withOutput(out);
+        registry.dispatch(target, CommandRegistry.tokenize(line));
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void expect(String output, String expected) {
+        if (!output.startsWith(expected)) {
+            throw new IllegalStateException("Set up failed, expected \"" + expected + "\" but got: " + output);
+        }
+    }
+
+    private static PrintStream discard() {
+        return new PrintStream(OutputStream.nullOutputStream());
+    }
+
+    private String caregiver(int i) {
+        return prefix + "c" + i;
+    }
+
+    private String patient(int i) {
+        return prefix + "p" + i;
+    }
+
+    private String vaccine(int v) {
+        return prefix + "v" + v;
+    }
+
+    private Date day(int d) {
+        return Date.valueOf(firstDay.plusDays(d));
+    }
+}
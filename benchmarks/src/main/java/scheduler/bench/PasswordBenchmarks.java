@@ -0,0 +1,50 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.util.Util;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Password hashing and the password strength checks create_patient and create_caregiver run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Thread)
+public class PasswordBenchmarks {
+
+    // a strong password and one failing each check
+    private static final String[] PASSWORDS = {"Bench#2099", "short", "nouppercase1!", "NoSpecial123", "Another#Good1"};
+
+    private byte[] salt;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        salt = Util.generateSalt();
+    }
+
+    @Benchmark
+    public byte[] generateHash() {
+        return Util.generateHash(PASSWORDS[0], salt);
+    }
+
+    @Benchmark
+    public List<String> passwordValidation() {
+        return Util.passwordProblems(PASSWORDS[next++ % PASSWORDS.length]);
+    }
+}
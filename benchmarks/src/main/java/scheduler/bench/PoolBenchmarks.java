@@ -0,0 +1,67 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.db.ConnectionManager;
+import scheduler.db.NamedStatement;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The username lookup create_patient does, on a connection opened for the call against one borrowed from
+ * the connection pool.
+ *
+ * Both need the SQL Server database the scheduler is configured for, so the jmh task leaves them out when
+ * it runs against the in-process backend.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class PoolBenchmarks {
+
+    private static final String USERNAME = SeededStore.PREFIX + "p0";
+
+    @Benchmark
+    public boolean unpooled() throws SQLException {
+        try (Connection con = ConnectionManager.openConnection()) {
+            return lookup(con);
+        }
+    }
+
+    @Benchmark
+    public boolean pooled() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+        try {
+            return lookup(con);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    private static boolean lookup(Connection con) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(NamedStatement.PATIENT_EXISTS.getSql())) {
+            statement.setString(1, USERNAME);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The read-only commands end to end, from dispatch to the store, against a SeededStore. Each invocation is
+ * run by the next patient for the next day.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class ReadBenchmarks {
+
+    private int next;
+
+    @Benchmark
+    public void searchCaregiverSchedule(SeededStore store) {
+        int i = next++;
+        store.dispatch(i, "search_caregiver_schedule", store.day(i).toString());
+    }
+
+    @Benchmark
+    public void showAppointments(SeededStore store) {
+        store.dispatch(next++, "show_appointments");
+    }
+}
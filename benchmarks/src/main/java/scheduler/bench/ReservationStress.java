@@ -0,0 +1,166 @@
+package scheduler.bench;
+
+import scheduler.db.ConnectionManager;
+import scheduler.reservation.Reservation;
+import scheduler.reservation.ReservationEngine;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fires many concurrent reservations for one date at the configured database and checks that no caregiver
+ * was booked twice and that doses were never oversold.
+ *
+ * Usage: java scheduler.bench.ReservationStress [caregivers] [doses] [patients] [threads]
+ */
+public class ReservationStress {
+
+    private static final String prefix = "stress_";
+    private static final String vaccine = prefix + "vaccine";
+    private static final Date date = Date.valueOf("2099-01-01");
+
+    public static void main(String[] args) throws Exception {
+        int caregivers = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int doses = args.length > 1 ? Integer.parseInt(args[1]) : 150;
+        int patients = args.length > 2 ? Integer.parseInt(args[2]) : 400;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+
+        seed(caregivers, doses, patients);
+
+        ReservationEngine engine = new ReservationEngine();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Reservation>> futures = new ArrayList<>();
+        for (int i = 0; i < patients; i++) {
+            String patient = prefix + "p" + i;
+            futures.add(pool.submit(() -> {
+                start.await();
+                return engine.reserve(patient, date, vaccine);
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        int confirmed = 0;
+        int failed = 0;
+        for (Future<Reservation> future : futures) {
+            try {
+                if (future.get().isConfirmed()) {
+                    confirmed++;
+                }
+            } catch (Exception e) {
+                failed++;
+            }
+        }
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+
+        System.out.printf("%d reservations (%d confirmed, %d errors) in %.1f ms with %d threads%n",
+                patients, confirmed, failed, elapsed / 1e6, threads);
+        int expected = Math.min(Math.min(caregivers, doses), patients);
+        boolean ok = verify(doses, confirmed) && (failed > 0 || confirmed == expected);
+        if (failed == 0 && confirmed != expected) {
+            System.out.println("FAIL: expected " + expected + " confirmed reservations");
+        }
+        System.out.println(ok ? "PASS" : "FAIL");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static void seed(int caregivers, int doses, int patients) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            con.setAutoCommit(false);
+            execute(con, "DELETE FROM Appointment WHERE VName = ?", vaccine);
+            execute(con, "DELETE FROM Availabilities WHERE Username LIKE ?", prefix + "%");
+            execute(con, "DELETE FROM Caregivers WHERE Username LIKE ?", prefix + "%");
+            execute(con, "DELETE FROM Patients WHERE Username LIKE ?", prefix + "%");
+            execute(con, "DELETE FROM Vaccines WHERE Name = ?", vaccine);
+
+            PreparedStatement caregiver = con.prepareStatement("INSERT INTO Caregivers VALUES (?, NULL, NULL)");
+            PreparedStatement availability = con.prepareStatement("INSERT INTO Availabilities VALUES (?, ?)");
+            for (int i = 0; i < caregivers; i++) {
+                caregiver.setString(1, prefix + "c" + i);
+                caregiver.addBatch();
+                availability.setDate(1, date);
+                availability.setString(2, prefix + "c" + i);
+                availability.addBatch();
+            }
+            caregiver.executeBatch();
+            availability.executeBatch();
+
+            PreparedStatement patient = con.prepareStatement("INSERT INTO Patients VALUES (?, NULL, NULL)");
+            for (int i = 0; i < patients; i++) {
+                patient.setString(1, prefix + "p" + i);
+                patient.addBatch();
+            }
+            patient.executeBatch();
+
+            PreparedStatement addVaccine = con.prepareStatement("INSERT INTO Vaccines (Name, Doses) VALUES (?, ?)");
+            addVaccine.setString(1, vaccine);
+            addVaccine.setInt(2, doses);
+            addVaccine.executeUpdate();
+            con.commit();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    private static boolean verify(int initialDoses, int confirmed) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        boolean ok = true;
+        try {
+            PreparedStatement doubleBooked = con.prepareStatement(
+                    "SELECT CName, Time, COUNT(*) AS n FROM Appointment WHERE VName = ? " +
+                    "GROUP BY CName, Time HAVING COUNT(*) > 1");
+            doubleBooked.setString(1, vaccine);
+            ResultSet rows = doubleBooked.executeQuery();
+            while (rows.next()) {
+                System.out.println("FAIL: caregiver " + rows.getString("CName") + " booked " +
+                        rows.getInt("n") + " times on " + rows.getDate("Time"));
+                ok = false;
+            }
+
+            PreparedStatement counts = con.prepareStatement(
+                    "SELECT (SELECT Doses FROM Vaccines WHERE Name = ?) AS doses, " +
+                    "(SELECT COUNT(*) FROM Appointment WHERE VName = ?) AS appointments");
+            counts.setString(1, vaccine);
+            counts.setString(2, vaccine);
+            ResultSet result = counts.executeQuery();
+            result.next();
+            int doses = result.getInt("doses");
+            int appointments = result.getInt("appointments");
+            if (doses < 0) {
+                System.out.println("FAIL: doses went negative (" + doses + ")");
+                ok = false;
+            }
+            if (appointments != confirmed || initialDoses - doses != appointments) {
+                System.out.println("FAIL: " + appointments + " appointments, " + confirmed + " confirmed, " +
+                        (initialDoses - doses) + " doses used");
+                ok = false;
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        return ok;
+    }
+
+    private static void execute(Connection con, String sql, String parameter) throws SQLException {
+        PreparedStatement statement = con.prepareStatement(sql);
+        statement.setString(1, parameter);
+        statement.executeUpdate();
+    }
+}
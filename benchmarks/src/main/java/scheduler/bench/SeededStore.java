@@ -0,0 +1,132 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import scheduler.Scheduler;
+import scheduler.Session;
+import scheduler.cache.AvailabilityIndex;
+import scheduler.command.CommandRegistry;
+import scheduler.model.Patient;
+import scheduler.model.Vaccine;
+import scheduler.repository.Repositories;
+import scheduler.util.Util;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The store the end-to-end benchmarks run against, seeded once per benchmark fork with bench_ patients,
+ * caregivers who are available on every day of a year, and appointments spread over both.
+ *
+ * The store is the storage backend chosen by the Storage environment variable. The jmh task defaults it to
+ * memory, the in-process backend; pointed at a SQL Server database (e.g. a local container) the same data is
+ * seeded there, unless an earlier run already did.
+ */
+@State(Scope.Benchmark)
+public class SeededStore {
+
+    static final String PREFIX = "bench_";
+    // the vaccine of the seeded appointments, and the one the booking benchmarks reserve and cancel
+    static final String VACCINE = PREFIX + "vaccine";
+    static final String BOOKING_VACCINE = PREFIX + "booking";
+    static final LocalDate FIRST_DAY = LocalDate.of(2099, 1, 1);
+    private static final String PASSWORD = "Bench#2099";
+    private static final int DOSES = 1_000_000_000;
+
+    @Param("100000")
+    public int patients;
+
+    @Param("5000")
+    public int caregivers;
+
+    @Param("365")
+    public int days;
+
+    @Param("100000")
+    public int appointments;
+
+    private final CommandRegistry registry = Scheduler.getRegistry();
+    private final PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+    private Session[] sessions;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException {
+        byte[] salt = Util.generateSalt();
+        byte[] hash = Util.generateHash(PASSWORD, salt);
+        sessions = new Session[patients];
+        for (int i = 0; i < patients; i++) {
+            sessions[i] = new Session(null, out, false);
+            sessions[i].loginPatient(new Patient.PatientBuilder(patient(i), salt, hash).build());
+        }
+        // a database seeded by an earlier run keeps its data
+        if (Repositories.caregivers().exists(caregiver(0))) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < patients; i++) {
+            Repositories.patients().save(patient(i), salt, hash);
+        }
+        List<Date> year = new ArrayList<>();
+        for (int d = 0; d < days; d++) {
+            year.add(day(d));
+        }
+        Map<String, List<Date>> availability = new LinkedHashMap<>();
+        for (int i = 0; i < caregivers; i++) {
+            Repositories.caregivers().save(caregiver(i), salt, hash);
+            availability.put(caregiver(i), year);
+        }
+        Repositories.availability().addMissing(availability);
+
+        Map<String, Integer> doses = new HashMap<>();
+        doses.put(VACCINE, DOSES);
+        doses.put(BOOKING_VACCINE, DOSES);
+        Vaccine.addDoses(doses);
+        for (int i = 0; i < appointments; i++) {
+            Repositories.appointments().reserve(patient(i % patients), day(i), VACCINE);
+        }
+        // the index, if there is one, has not seen the rows written around it
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        if (index != null) {
+            index.reload();
+        }
+        System.out.printf("%nSeeded %d patients, %d caregivers, %d days and %d appointments in %.1f s%n",
+                patients, caregivers, days, appointments, (System.nanoTime() - start) / 1e9);
+    }
+
+    // runs a command as the logged-in patient i
+    void dispatch(int i, String... tokens) {
+        registry.dispatch(session(i), tokens);
+    }
+
+    Session session(int i) {
+        return sessions[Math.floorMod(i, patients)];
+    }
+
+    String patient(int i) {
+        return PREFIX + "p" + Math.floorMod(i, patients);
+    }
+
+    static String caregiver(int i) {
+        return PREFIX + "c" + i;
+    }
+
+    Date day(int i) {
+        return Date.valueOf(FIRST_DAY.plusDays(Math.floorMod(i, days)));
+    }
+
+    Date lastDay() {
+        return day(days - 1);
+    }
+}
@@ -14,6 +14,8 @@ CREATE TABLE Availabilities (
 CREATE TABLE Vaccines (
     Name varchar(255),
     Doses int,
+    -- bumped by every write, for the optimistic concurrency strategy
+    Version int NOT NULL DEFAULT 0,
     PRIMARY KEY (Name)
 );
 
@@ -31,5 +33,30 @@ CREATE TABLE Appointment (
     CName varchar(255) REFERENCES Caregivers(Username),
     VName varchar(255) REFERENCES Vaccines(Name),
     Time date,
+    Version int NOT NULL DEFAULT 0,
     PRIMARY KEY(id)
-);
\ No newline at end of file
+);
+
+-- show_appointments pages through one user's appointments in (Time, id) order
+CREATE INDEX Appointment_Patient ON Appointment (PName, Time, id) INCLUDE (CName, VName, Version);
+CREATE INDEX Appointment_Caregiver ON Appointment (CName, Time, id) INCLUDE (PName, VName, Version);
+
+CREATE TABLE IdSequences (
+    Name varchar(255),
+    NextValue int,
+    PRIMARY KEY (Name)
+);
+
+-- the sequence number of the last journal record applied to the database, per journal file
+CREATE TABLE JournalCheckpoints (
+    Name varchar(255),
+    Sequence bigint,
+    PRIMARY KEY (Name)
+);
+
+-- rewritten on the primary every second and read back from the read replicas to measure their lag
+CREATE TABLE ReplicationHeartbeat (
+    Name varchar(255),
+    Beat datetime2,
+    PRIMARY KEY (Name)
+);
@@ -0,0 +1,28 @@
+-- the tables of one shard database, see ShardRouter; accounts and vaccines stay on the main database, so the
+-- names are not foreign keys here
+
+CREATE TABLE Availabilities (
+    Time date,
+    Username varchar(255),
+    PRIMARY KEY (Time, Username)
+);
+
+CREATE TABLE Appointment (
+    id int,
+    PName varchar(255),
+    CName varchar(255),
+    VName varchar(255),
+    Time date,
+    Version int NOT NULL DEFAULT 0,
+    PRIMARY KEY(id)
+);
+
+CREATE INDEX Appointment_Patient ON Appointment (PName, Time, id) INCLUDE (CName, VName, Version);
+CREATE INDEX Appointment_Caregiver ON Appointment (CName, Time, id) INCLUDE (PName, VName, Version);
+
+-- appointment ids of this shard
+CREATE TABLE IdSequences (
+    Name varchar(255),
+    NextValue int,
+    PRIMARY KEY (Name)
+);
@@ -0,0 +1,82 @@
+package scheduler;
+
+import scheduler.model.Caregiver;
+import scheduler.util.Recurrence;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uploads availability for many caregivers from a CSV file in one transaction.
+ *
+ * Each line is either "username,date" or "username,start_date,end_date[,pattern]" where pattern is one of
+ * the upload_availability recurrences (daily, weekdays, weekends, MON,WED,... written as MON;WED). An
+ * optional header line starting with "username" is skipped.
+ *
+ * Usage: java scheduler.AvailabilityImporter <csv file>
+ */
+public class AvailabilityImporter {
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Usage: AvailabilityImporter <csv file>");
+            return;
+        }
+        Map<String, List<Date>> datesByCaregiver = new LinkedHashMap<>();
+        int requested = 0;
+        int lineNumber = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(args[0]))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String[] fields = line.split(",");
+                if (line.trim().isEmpty() || (lineNumber == 1 && fields[0].trim().equalsIgnoreCase("username"))) {
+                    continue;
+                }
+                List<Date> dates = parseDates(fields);
+                datesByCaregiver.computeIfAbsent(fields[0].trim(), k -> new ArrayList<>()).addAll(dates);
+                requested += dates.size();
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid line " + lineNumber + ": " + e.getMessage());
+            return;
+        } catch (IOException e) {
+            System.out.println("Error occurred when reading " + args[0]);
+            e.printStackTrace();
+            return;
+        }
+
+        try {
+            long start = System.nanoTime();
+            int added = Caregiver.uploadAvailabilities(datesByCaregiver);
+            System.out.printf("Availability uploaded for %d caregivers: %d added, %d skipped in %.1f ms%n",
+                    datesByCaregiver.size(), added, requested - added, (System.nanoTime() - start) / 1e6);
+        } catch (SQLException e) {
+            System.out.println("Error occurred when uploading availability");
+            e.printStackTrace();
+        }
+    }
+
+    private static List<Date> parseDates(String[] fields) {
+        switch (fields.length) {
+            case 2:
+                List<Date> single = new ArrayList<>();
+                single.add(Date.valueOf(fields[1].trim()));
+                return single;
+            case 3:
+                return Recurrence.daily().expand(Date.valueOf(fields[1].trim()), Date.valueOf(fields[2].trim()));
+            case 4:
+                Recurrence recurrence = Recurrence.parse(fields[3].trim().replace(';', ','));
+                return recurrence.expand(Date.valueOf(fields[1].trim()), Date.valueOf(fields[2].trim()));
+            default:
+                throw new IllegalArgumentException("expected username,date or username,start,end[,pattern]");
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package scheduler;
+
+import scheduler.command.Command;
+import scheduler.command.CommandRegistry;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a stream of commands without prompting, e.g. a nightly job replaying a command file.
+ *
+ * A reader thread reads and tokenizes lines ahead of execution, output is buffered instead of being flushed
+ * per line, and with a pipeline of more than one thread, consecutive read-only commands run concurrently.
+ * Their output is still written in input order, and any command that may change the session or the
+ * database waits for the read-only commands before it to finish first.
+ * Blank lines, including whitespace-only ones, and lines starting with # are skipped.
+ */
+public class BatchRunner {
+
+    private static final String[] END = new String[0];
+    private static final int QUEUE_SIZE = 4096;
+
+    private final CommandRegistry registry;
+    private final int pipeline;
+
+    public BatchRunner(CommandRegistry registry, int pipeline) {
+        if (pipeline < 1) {
+            throw new IllegalArgumentException("Pipeline needs at least one thread!");
+        }
+        this.registry = registry;
+        this.pipeline = pipeline;
+    }
+
+    public void run(BufferedReader in, OutputStream target) throws IOException {
+        PrintStream out = new PrintStream(new BufferedOutputStream(target, 1 << 16), false);
+        Session session = new Session(null, out, false);
+        BlockingQueue<String[]> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        ExecutorService workers = pipeline > 1 ? Executors.newFixedThreadPool(pipeline) : null;
+        Deque<Future<ByteArrayOutputStream>> pending = new ArrayDeque<>();
+        IOException[] readFailure = new IOException[1];
+
+        Thread reader = new Thread(() -> {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] tokens = CommandRegistry.tokenize(line);
+                    if (tokens.length == 0 || tokens[0].startsWith("#")) {
+                        continue;
+                    }
+                    queue.put(tokens);
+                }
+            } catch (IOException e) {
+                readFailure[0] = e;
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                // the runner is shutting down
+            }
+        }, "batch-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long start = System.nanoTime();
+        long executed = 0;
+        try {
+            while (!session.isEnded()) {
+                String[] tokens = queue.take();
+                if (tokens == END) {
+                    break;
+                }
+                executed++;
+                Command command = registry.get(tokens[0]);
+                if (workers != null && command != null && command.isReadOnly()) {
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    Session view = session.withOutput(new PrintStream(buffer, false));
+                    pending.addLast(workers.submit(() -> {
+                        registry.dispatch(view, tokens);
+                        view.flush();
+                        return buffer;
+                    }));
+                    // keep a bounded window of commands in flight
+                    if (pending.size() > pipeline * 4) {
+                        drain(pending, out, 1);
+                    }
+                } else {
+                    drain(pending, out, pending.size());
+                    registry.dispatch(session, tokens);
+                }
+            }
+            drain(pending, out, pending.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            reader.interrupt();
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+            out.flush();
+        }
+        if (readFailure[0] != null) {
+            throw readFailure[0];
+        }
+        long elapsed = System.nanoTime() - start;
+        System.err.printf("Executed %d commands in %.1f ms%n", executed, elapsed / 1e6);
+    }
+
+    // writes out the output of the oldest count pending commands, in order
+    private static void drain(Deque<Future<ByteArrayOutputStream>> pending, PrintStream out, int count)
+            throws InterruptedException {
+        for (int i = 0; i < count && !pending.isEmpty(); i++) {
+            try {
+                pending.pollFirst().get().writeTo(out);
+            } catch (ExecutionException e) {
+                out.println("Please try again");
+                e.getCause().printStackTrace();
+            } catch (IOException e) {
+                // writing to a PrintStream does not throw
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package scheduler;
+
+import scheduler.repository.AppointmentQuery;
+import scheduler.repository.BulkCancellation;
+import scheduler.repository.Repositories;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+/**
+ * Cancels many appointments at once and notifies their patients, one line per cancelled appointment.
+ *
+ * Caregivers cancel their own day with cancel_bulk; recalling a vaccine or clearing a date range touches every
+ * caregiver's schedule, so it is an admin operation run from the command line:
+ *
+ * Usage: java scheduler.BulkCanceller vaccine <vaccine> [<start_date> <end_date>] | dates <start_date> <end_date>
+ */
+public class BulkCanceller {
+
+    public static void main(String[] args) {
+        BulkCancellation cancellation;
+        try {
+            if ((args.length == 2 || args.length == 4) && args[0].equals("vaccine")) {
+                // a recall applies from today by default
+                Date from = args.length == 4 ? Date.valueOf(args[2]) : Date.valueOf(LocalDate.now());
+                Date to = args.length == 4 ? Date.valueOf(args[3]) : AppointmentQuery.LAST_DATE;
+                cancellation = new BulkCancellation.BulkCancellationBuilder(from, to)
+                        .vaccine(args[1]).withoutRefund().build();
+            } else if (args.length == 3 && args[0].equals("dates")) {
+                cancellation = new BulkCancellation.BulkCancellationBuilder(Date.valueOf(args[1]),
+                        Date.valueOf(args[2])).build();
+            } else {
+                System.out.println("Usage: BulkCanceller vaccine <vaccine> [<start_date> <end_date>] | " +
+                        "dates <start_date> <end_date>");
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid arguments: " + e.getMessage());
+            return;
+        }
+        try {
+            cancel(cancellation, System.out::println);
+        } catch (SQLException e) {
+            System.out.println("Error occurred when cancelling appointments");
+            e.printStackTrace();
+        }
+    }
+
+    // cancels the appointments, printing a notification for each as it arrives; returns how many were cancelled
+    public static int cancel(BulkCancellation cancellation, Consumer<String> out) throws SQLException {
+        String outcome = (cancellation.isRefund() ? "dose returned" : "dose recalled") + ", " +
+                (cancellation.isRelease() ? "caregiver available again" : "caregiver withdrawn");
+        int cancelled = Repositories.appointments().cancelAll(cancellation, appointment ->
+                out.accept("Notify " + appointment.getPatient() + ": appointment " + appointment.getId() +
+                        " on " + appointment.getTime() + " with " + appointment.getCaregiver() + " for " +
+                        appointment.getVaccineName() + " is cancelled (" + outcome + ")"));
+        out.accept("Cancelled " + cancelled + " appointments");
+        return cancelled;
+    }
+}
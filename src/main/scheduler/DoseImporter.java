@@ -0,0 +1,249 @@
+package scheduler;
+
+import scheduler.model.Vaccine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports a shipment manifest, a CSV of "vaccine,count" lines, into the Vaccines table.
+ *
+ * Reading, parsing and aggregating run as a pipeline: one thread reads the file in chunks of lines into a
+ * bounded queue while a pool of parsers sums the counts per vaccine, so only a few chunks are ever held in
+ * memory however large the manifest is. Vaccine names are aggregated case-insensitively, like the database
+ * compares them. The totals are then written with one batched upsert in a single transaction. A manifest
+ * with a malformed line is rejected as a whole before anything is written.
+ */
+public class DoseImporter {
+
+    private static final int CHUNK_LINES = 8192;
+    // the directory manifests are imported from, null if ImportDir is not set
+    private static final Path IMPORT_DIR = importDir();
+    private static final List<String> END = new ArrayList<>();
+
+    public static class Result {
+        private final long lines;
+        private final long bytes;
+        private final Map<String, Integer> dosesByVaccine;
+        private final long readNanos;
+        private final long writeNanos;
+
+        private Result(long lines, long bytes, Map<String, Integer> dosesByVaccine, long readNanos,
+                       long writeNanos) {
+            this.lines = lines;
+            this.bytes = bytes;
+            this.dosesByVaccine = dosesByVaccine;
+            this.readNanos = readNanos;
+            this.writeNanos = writeNanos;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        public Map<String, Integer> getDosesByVaccine() {
+            return dosesByVaccine;
+        }
+
+        @Override
+        public String toString() {
+            long doses = 0;
+            for (int count : dosesByVaccine.values()) {
+                doses += count;
+            }
+            double seconds = Math.max(1, readNanos) / 1e9;
+            return String.format("Imported %d doses for %d vaccines from %d lines: " +
+                            "parsed in %.1f ms (%.0f lines/s, %.1f MB/s), written in %.1f ms",
+                    doses, dosesByVaccine.size(), lines, readNanos / 1e6, lines / seconds,
+                    bytes / seconds / (1 << 20), writeNanos / 1e6);
+        }
+    }
+
+    // a chunk of consecutive manifest lines and the line number of its first line
+    private static class Chunk {
+        private final long firstLine;
+        private final List<String> lines;
+
+        Chunk(long firstLine, List<String> lines) {
+            this.firstLine = firstLine;
+            this.lines = lines;
+        }
+    }
+
+    private final int parsers;
+
+    public DoseImporter() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    public DoseImporter(int parsers) {
+        this.parsers = parsers;
+    }
+
+    /**
+     * Resolves the file name given to import_doses. With ImportDir set, the name is resolved against that
+     * directory and a name that leads outside it, also through a symbolic link, is refused. Without ImportDir,
+     * console and batch users may import any file, while server clients may not import at all.
+     * Returns null for a refused name.
+     */
+    public static Path resolve(String name, boolean remote) throws IOException {
+        if (IMPORT_DIR == null) {
+            return remote ? null : Paths.get(name);
+        }
+        Path file = IMPORT_DIR.resolve(name).normalize();
+        if (!file.startsWith(IMPORT_DIR) || !file.toRealPath().startsWith(IMPORT_DIR.toRealPath())) {
+            return null;
+        }
+        return file;
+    }
+
+    private static Path importDir() {
+        String setting = System.getenv("ImportDir");
+        if (setting == null || setting.isEmpty()) {
+            return null;
+        }
+        return Paths.get(setting).toAbsolutePath().normalize();
+    }
+
+    public Result importFile(Path file) throws IOException, SQLException {
+        long start = System.nanoTime();
+        BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(parsers * 2);
+        ExecutorService pool = Executors.newFixedThreadPool(parsers);
+        List<Future<Map<String, Long>>> partials = new ArrayList<>();
+        for (int i = 0; i < parsers; i++) {
+            partials.add(pool.submit(() -> parse(queue)));
+        }
+
+        long lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<String> chunk = new ArrayList<>(CHUNK_LINES);
+            long firstLine = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                chunk.add(line);
+                if (chunk.size() == CHUNK_LINES) {
+                    queue.put(new Chunk(firstLine, chunk));
+                    firstLine = lines + 1;
+                    chunk = new ArrayList<>(CHUNK_LINES);
+                }
+            }
+            queue.put(new Chunk(firstLine, chunk));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + file);
+        } finally {
+            // one end marker per parser, even when reading failed, so they all stop
+            try {
+                for (int i = 0; i < parsers; i++) {
+                    queue.put(new Chunk(-1, END));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pool.shutdownNow();
+            }
+            pool.shutdown();
+        }
+
+        Map<String, Long> totals = new HashMap<>();
+        Map<String, String> spelling = new HashMap<>();
+        for (Future<Map<String, Long>> partial : partials) {
+            try {
+                for (Map.Entry<String, Long> entry : partial.get().entrySet()) {
+                    String key = entry.getKey().toLowerCase(Locale.ROOT);
+                    spelling.putIfAbsent(key, entry.getKey());
+                    totals.merge(key, entry.getValue(), Long::sum);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while parsing " + file);
+            } catch (ExecutionException e) {
+                throw new IllegalArgumentException(e.getCause().getMessage());
+            }
+        }
+        Map<String, Integer> dosesByVaccine = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : totals.entrySet()) {
+            if (entry.getValue() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many doses for " + spelling.get(entry.getKey()));
+            }
+            dosesByVaccine.put(spelling.get(entry.getKey()), entry.getValue().intValue());
+        }
+        long readNanos = System.nanoTime() - start;
+
+        long writeStart = System.nanoTime();
+        if (!dosesByVaccine.isEmpty()) {
+            Vaccine.addDoses(dosesByVaccine);
+        }
+        return new Result(lines, Files.size(file), dosesByVaccine, readNanos, System.nanoTime() - writeStart);
+    }
+
+    // sums the counts of every chunk this parser takes off the queue
+    private static Map<String, Long> parse(BlockingQueue<Chunk> queue) throws InterruptedException {
+        Map<String, Long> counts = new HashMap<>();
+        IllegalArgumentException failure = null;
+        while (true) {
+            Chunk chunk = queue.take();
+            if (chunk.lines == END) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return counts;
+            }
+            // after a malformed line keep draining the queue so the reader never blocks
+            if (failure != null) {
+                continue;
+            }
+            long lineNumber = chunk.firstLine;
+            try {
+                for (String line : chunk.lines) {
+                    parseLine(line, lineNumber++, counts);
+                }
+            } catch (IllegalArgumentException e) {
+                failure = e;
+            }
+        }
+    }
+
+    private static void parseLine(String line, long lineNumber, Map<String, Long> counts) {
+        if (line.trim().isEmpty()) {
+            return;
+        }
+        int comma = line.indexOf(',');
+        if (comma <= 0 || line.indexOf(',', comma + 1) >= 0) {
+            throw new IllegalArgumentException("Invalid line " + lineNumber + ": expected vaccine,count");
+        }
+        String vaccine = line.substring(0, comma).trim();
+        String count = line.substring(comma + 1).trim();
+        // an optional header line
+        if (lineNumber == 1 && vaccine.equalsIgnoreCase("vaccine")) {
+            return;
+        }
+        long doses;
+        try {
+            doses = Long.parseLong(count);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid line " + lineNumber + ": " + count + " is not a number");
+        }
+        if (doses <= 0 || vaccine.isEmpty()) {
+            throw new IllegalArgumentException("Invalid line " + lineNumber + ": expected vaccine,count");
+        }
+        counts.merge(vaccine, doses, Long::sum);
+    }
+}
@@ -1,263 +1,316 @@
 package scheduler;
 
-import scheduler.db.ConnectionManager;
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.UsernameFilter;
+import scheduler.cache.VaccineCache;
+import scheduler.command.Command;
+import scheduler.command.Command.Role;
+import scheduler.command.CommandRegistry;
+import scheduler.journal.Journal;
+import scheduler.metrics.Metrics;
+import scheduler.model.Appointment;
 import scheduler.model.Caregiver;
 import scheduler.model.Patient;
 import scheduler.model.Vaccine;
+import scheduler.repository.AppointmentQuery;
+import scheduler.repository.AvailabilitySummary;
+import scheduler.repository.BulkCancellation;
+import scheduler.repository.Repositories;
+import scheduler.reservation.Reservation;
+import scheduler.util.Recurrence;
 import scheduler.util.Util;
 
 import java.io.BufferedReader;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
 
 public class Scheduler {
 
-    // objects to keep track of the currently logged-in user
-    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
-    //       since only one user can be logged-in at a time
-    private static Caregiver currentCaregiver = null;
-    private static Patient currentPatient = null;
+    // appointments shown by show_appointments unless a limit is given
+    private static final int APPOINTMENTS_PAGE_SIZE = 100;
+
+    // every command the scheduler understands, in menu order
+    private static final CommandRegistry registry = new CommandRegistry()
+            .register(new Command.CommandBuilder("create_patient", Scheduler::createPatient)
+                    .usage("<username> <password>").arity(3, "Create patient failed").build())
+            .register(new Command.CommandBuilder("create_caregiver", Scheduler::createCaregiver)
+                    .usage("<username> <password>").arity(3, "Failed to create user.").build())
+            .register(new Command.CommandBuilder("login_patient", Scheduler::loginPatient)
+                    .usage("<username> <password>").arity(3, "Login patient failed")
+                    .role(Role.LOGGED_OUT, "User already logged in, try again").build())
+            .register(new Command.CommandBuilder("login_caregiver", Scheduler::loginCaregiver)
+                    .usage("<username> <password>").arity(3, "Login failed.")
+                    .role(Role.LOGGED_OUT, "User already logged in.").build())
+            .register(new Command.CommandBuilder("search_caregiver_schedule", Scheduler::searchCaregiverSchedule)
+                    .usage("<date> | <start_date> <end_date> [names <n>] [compact]")
+                    .arity(2, Integer.MAX_VALUE, "Please try again")
+                    .role(Role.LOGGED_IN, "Please login first").readOnly().build())
+            .register(new Command.CommandBuilder("reserve", Scheduler::reserve)
+                    .usage("<date> <vaccine>").arity(3, "Please try again")
+                    .role(Role.PATIENT, "Please login first", "Please login as a patient").build())
+            .register(new Command.CommandBuilder("upload_availability", Scheduler::uploadAvailability)
+                    .usage("<date> | <start_date> <end_date> [daily|weekdays|weekends|MON,WED,...]")
+                    .arity(2, 4, "Please try again!")
+                    .role(Role.CAREGIVER, "Please login as a caregiver first!").build())
+            .register(new Command.CommandBuilder("cancel", Scheduler::cancel)
+                    .usage("<appointment_id>").arity(2, "Invalid command statement, please try again.")
+                    .role(Role.LOGGED_IN, "Please login first").build())
+            .register(new Command.CommandBuilder("cancel_bulk", Scheduler::cancelBulk)
+                    .usage("<date>").arity(2, "Please try again")
+                    .role(Role.CAREGIVER, "Please login as a caregiver first!").build())
+            .register(new Command.CommandBuilder("add_doses", Scheduler::addDoses)
+                    .usage("<vaccine> <number>").arity(3, "Please try again!")
+                    .role(Role.CAREGIVER, "Please login as a caregiver first!").build())
+            .register(new Command.CommandBuilder("import_doses", Scheduler::importDoses)
+                    .usage("<file>").arity(2, "Please try again!")
+                    .role(Role.CAREGIVER, "Please login as a caregiver first!").build())
+            .register(new Command.CommandBuilder("show_appointments", Scheduler::showAppointments)
+                    .usage("[<start_date> <end_date>] [after <date> <appointment_id>] [limit <n>]")
+                    .role(Role.LOGGED_IN, "Please login first").readOnly().build())
+            .register(new Command.CommandBuilder("stats", Scheduler::stats)
+                    .arity(1, "Please try again").readOnly().build())
+            .register(new Command.CommandBuilder("logout", Scheduler::logout)
+                    .role(Role.LOGGED_IN, "Please login first").build())
+            .register(new Command.CommandBuilder("quit", Scheduler::quit).build());
 
     public static void main(String[] args) {
+        // server mode: scheduler --server <port>
+        if (args.length == 2 && args[0].equals("--server")) {
+            // replays the journal, if it is on, before anything reads the database
+            Journal.getInstance();
+            AvailabilityIndex.getInstance();
+            UsernameFilter.patients();
+            Metrics.startLog(60);
+            try {
+                new SchedulerServer(Integer.parseInt(args[1])).serve();
+            } catch (NumberFormatException e) {
+                System.out.println("Please enter a valid port!");
+            } catch (IOException e) {
+                System.out.println("Error occurred when running the server");
+                e.printStackTrace();
+            }
+            return;
+        }
+        // admin upload of availability for many caregivers: scheduler --import-availability <csv file>
+        if (args.length == 2 && args[0].equals("--import-availability")) {
+            AvailabilityImporter.main(new String[]{args[1]});
+            return;
+        }
+        // admin cancellation of many appointments: scheduler --cancel-bulk vaccine <vaccine> [<start> <end>] |
+        // dates <start> <end>
+        if (args.length >= 1 && args[0].equals("--cancel-bulk")) {
+            BulkCanceller.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // batch mode: scheduler --batch <file|-> [--pipeline <threads>]
+        if ((args.length == 2 || args.length == 4) && args[0].equals("--batch")) {
+            Journal.getInstance();
+            Metrics.startLog(0);
+            runBatch(args);
+            return;
+        }
+        // start loading the availability index and username filters in the background
+        Journal.getInstance();
+        AvailabilityIndex.getInstance();
+        UsernameFilter.patients();
+        Metrics.startLog(0);
+        // read input from the console user
+        Session session = new Session(new BufferedReader(new InputStreamReader(System.in)), System.out);
+        run(session);
+    }
+
+    public static CommandRegistry getRegistry() {
+        return registry;
+    }
+
+    // runs the command loop of one session until the user quits or the input ends
+    public static void run(Session session) {
         // printing greetings text
-        System.out.println();
-        System.out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
-        System.out.println("*** Please enter one of the following commands ***");
-        System.out.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1)
-        System.out.println("> create_caregiver <username> <password>");
-        System.out.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1)
-        System.out.println("> login_caregiver <username> <password>");
-        System.out.println("> search_caregiver_schedule <date>");  // TODO: implement search_caregiver_schedule (Part 2)
-        System.out.println("> reserve <date> <vaccine>");  // TODO: implement reserve (Part 2)
-        System.out.println("> upload_availability <date>");
-        System.out.println("> cancel <appointment_id>");  // TODO: implement cancel (extra credit)
-        System.out.println("> add_doses <vaccine> <number>");
-        System.out.println("> show_appointments");  // TODO: implement show_appointments (Part 2)
-        System.out.println("> logout");  // TODO: implement logout (Part 2)
-        System.out.println("> quit");
-        System.out.println();
-
-        // read input from user
-        BufferedReader r = new BufferedReader(new InputStreamReader(System.in));
-        while (true) {
-            System.out.print("> ");
-            String response = "";
+        session.println();
+        session.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
+        registry.printMenu(session);
+        session.println();
+
+        while (!session.isEnded()) {
+            session.print("> ");
+            String response;
             try {
-                response = r.readLine();
+                response = session.readLine();
             } catch (IOException e) {
-                System.out.println("Please try again!");
+                // the input is broken, e.g. the client's connection was reset; every later read fails too
+                return;
+            }
+            // the input has ended, e.g. the client disconnected
+            if (response == null) {
+                return;
             }
             // split the user input by spaces
-            String[] tokens = response.split(" ");
+            String[] tokens = CommandRegistry.tokenize(response);
             // check if input exists
             if (tokens.length == 0) {
-                System.out.println("Please try again!");
+                session.println("Please try again!");
                 continue;
             }
             // determine which operation to perform
-            String operation = tokens[0];
-            if (operation.equals("create_patient")) {
-                createPatient(tokens);
-            } else if (operation.equals("create_caregiver")) {
-                createCaregiver(tokens);
-            } else if (operation.equals("login_patient")) {
-                loginPatient(tokens);
-            } else if (operation.equals("login_caregiver")) {
-                loginCaregiver(tokens);
-            } else if (operation.equals("search_caregiver_schedule")) {
-                searchCaregiverSchedule(tokens);
-            } else if (operation.equals("reserve")) {
-                reserve(tokens);
-            } else if (operation.equals("upload_availability")) {
-                uploadAvailability(tokens);
-            } else if (operation.equals("cancel")) {
-                cancel(tokens);
-            } else if (operation.equals("add_doses")) {
-                addDoses(tokens);
-            } else if (operation.equals("show_appointments")) {
-                showAppointments(tokens);
-            } else if (operation.equals("logout")) {
-                logout(tokens);
-            } else if (operation.equals("quit")) {
-                System.out.println("Bye!");
+            registry.dispatch(session, tokens);
+        }
+    }
+
+    private static void runBatch(String[] args) {
+        int pipeline = 1;
+        if (args.length == 4) {
+            if (!args[2].equals("--pipeline")) {
+                System.out.println("Usage: --batch <file|-> [--pipeline <threads>]");
                 return;
-            } else {
-                System.out.println("Invalid operation name!");
             }
+            try {
+                pipeline = Integer.parseInt(args[3]);
+            } catch (NumberFormatException e) {
+                System.out.println("Please enter a valid number of threads!");
+                return;
+            }
+        }
+        try {
+            Reader input = args[1].equals("-") ? new InputStreamReader(System.in) : new FileReader(args[1]);
+            new BatchRunner(registry, pipeline).run(new BufferedReader(input, 1 << 16), System.out);
+        } catch (IOException e) {
+            System.out.println("Error occurred when reading the batch file");
+            e.printStackTrace();
         }
     }
 
-    private static void createPatient(String[] tokens) {
+    private static void createPatient(Session session, String[] tokens) {
         // create_patient <username> <password>
-        // check 1: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Create patient failed");
-            return;
-        }
         String username = tokens[1];
         String password = tokens[2];
-        // check 2: check if the username has been taken already
-        if (usernameExistsPatient(username)) {
-            System.out.println("Username taken, try again");
+        // check 1: check if the username has been taken already
+        if (usernameExistsPatient(session, username)) {
+            session.println("Username taken, try again");
+            return;
+        }
+        // check 2: password strength
+        password = passwordHelper(session, password);
+        if (password == null) {
+            session.println("Create patient failed");
             return;
         }
-        // check3: password strength
-        password = passwordHelper(password);
 
         byte[] salt = Util.generateSalt();
-        byte[] hash = Util.generateHash(password, salt);
+        byte[] hash = Util.generateHashAsync(password, salt).join();
         // create the patient
         try {
             Patient patient = new Patient.PatientBuilder(username, salt, hash).build();
             // save to caregiver information to our database
             patient.saveToDB();
-            System.out.println("Created user " + username);
+            session.println("Created user " + username);
         } catch (SQLException e) {
-            System.out.println("Create patient failed.");
+            session.println("Create patient failed.");
             e.printStackTrace();
         }
     }
 
-    private static boolean usernameExistsPatient(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Patients WHERE Username = ?";
+    private static boolean usernameExistsPatient(Session session, String username) {
+        // names the filter has never seen are definitely free
+        if (!UsernameFilter.patients().mightExist(username)) {
+            return false;
+        }
         try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            return Repositories.patients().exists(username);
         } catch (SQLException e) {
-            System.out.println("Create patient failed");
+            session.println("Create patient failed");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
         return true;
     }
 
-    private static void createCaregiver(String[] tokens) {
+    private static void createCaregiver(Session session, String[] tokens) {
         // create_caregiver <username> <password>
-        // check 1: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Failed to create user.");
-            return;
-        }
         String username = tokens[1];
         String password = tokens[2];
-        // check 2: check if the username has been taken already
-        if (usernameExistsCaregiver(username)) {
-            System.out.println("Username taken, try again!");
+        // check 1: check if the username has been taken already
+        if (usernameExistsCaregiver(session, username)) {
+            session.println("Username taken, try again!");
+            return;
+        }
+        // check 2: password strength
+        password = passwordHelper(session, password);
+        if (password == null) {
+            session.println("Failed to create user.");
             return;
         }
-        // check3: password strength
-        password = passwordHelper(password);
 
         byte[] salt = Util.generateSalt();
-        byte[] hash = Util.generateHash(password, salt);
+        byte[] hash = Util.generateHashAsync(password, salt).join();
         // create the caregiver
         try {
             Caregiver caregiver = new Caregiver.CaregiverBuilder(username, salt, hash).build(); 
             // save to caregiver information to our database
             caregiver.saveToDB();
-            System.out.println("Created user " + username);
+            session.println("Created user " + username);
         } catch (SQLException e) {
-            System.out.println("Failed to create user.");
+            session.println("Failed to create user.");
             e.printStackTrace();
         }
     }
 
-    private static boolean usernameExistsCaregiver(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Caregivers WHERE Username = ?";
+    private static boolean usernameExistsCaregiver(Session session, String username) {
+        // names the filter has never seen are definitely free
+        if (!UsernameFilter.caregivers().mightExist(username)) {
+            return false;
+        }
         try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            return Repositories.caregivers().exists(username);
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
+            session.println("Error occurred when checking username");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
         return true;
     }
 
-    private static String passwordHelper(String currentPassword) {
+    private static String passwordHelper(Session session, String currentPassword) {
         String password = currentPassword;
         boolean done = false;
         while(!done) {
-            boolean length = false;
-            boolean lowerCase = false;
-            boolean upperCase = false;
-            boolean number = false;
-            boolean special = false;
-            List<Character> special_characters = new ArrayList<>();
-            special_characters.add('!');
-            special_characters.add('@');
-            special_characters.add('#');
-            special_characters.add('?');
-            if(password.length()>7) {
-                length = true;
-            }
-            for(int i=0; i<password.length(); i++) {
-                char ch = password.charAt(i);
-                if(Character.isDigit(ch)){
-                    number = true;
-                } else if (Character.isUpperCase(ch)) {
-                    upperCase = true;
-                } else if (Character.isLowerCase(ch)) {
-                    lowerCase = true;
-                } else if (special_characters.contains(ch)){
-                    special = true;
-                }
-            }
-            if (!length) {
-                System.out.println("Password has to be at least 8 characters long.");
+            List<String> problems = Util.passwordProblems(password);
+            for (String problem : problems) {
+                session.println(problem);
             }
-            if (!lowerCase || !upperCase) {
-                System.out.println("Password has to contain both uppercase and lowercase letter.");
-            }
-            if (!number) {
-                System.out.println("Password has to contain both letters and numbers");
-            }
-            if (!special) {
-                System.out.println("Password has to contain at least one special character from !, @, #, ?");
-            }
-            if (length && lowerCase && upperCase && number && special) {
+            if (problems.isEmpty()) {
                 done = true;
             } else {
-                System.out.println("Please enter new password:");
-                Scanner input = new Scanner(System.in);
-                password = input.nextLine();
+                // there is nobody to ask for a new password in batch mode
+                if (!session.isInteractive()) {
+                    return null;
+                }
+                session.println("Please enter new password:");
+                try {
+                    password = session.readLine();
+                } catch (IOException e) {
+                    password = null;
+                }
+                // the input has ended before a strong password was given
+                if (password == null) {
+                    return null;
+                }
             }
         }
         return password;
     }
 
 
-    private static void loginPatient(String[] tokens) {
+    private static void loginPatient(Session session, String[] tokens) {
         // login_patient <username> <password>
-        // check 1: if someone's already logged-in, they need to log out first
-        if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("User already logged in, try again");
-            return;
-        }
-        // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Login patient failed");
-            return;
-        }
         String username = tokens[1];
         String password = tokens[2];
 
@@ -265,30 +318,20 @@ public class Scheduler {
         try {
             patient = new Patient.PatientGetter(username, password).get();
         } catch (SQLException e) {
-            System.out.println("Login patient failed");
+            session.println("Login patient failed");
             e.printStackTrace();
         }
         // check if the login was successful
         if (patient == null) {
-            System.out.println("Login patient failed");
+            session.println("Login patient failed");
         } else {
-            System.out.println("Logged in as " + username);
-            currentPatient = patient;
+            session.println("Logged in as " + username);
+            session.loginPatient(patient);
         }
     }
 
-    private static void loginCaregiver(String[] tokens) {
+    private static void loginCaregiver(Session session, String[] tokens) {
         // login_caregiver <username> <password>
-        // check 1: if someone's already logged-in, they need to log out first
-        if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("User already logged in.");
-            return;
-        }
-        // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Login failed.");
-            return;
-        }
         String username = tokens[1];
         String password = tokens[2];
 
@@ -296,256 +339,261 @@ public class Scheduler {
         try {
             caregiver = new Caregiver.CaregiverGetter(username, password).get();
         } catch (SQLException e) {
-            System.out.println("Login failed.");
+            session.println("Login failed.");
             e.printStackTrace();
         }
         // check if the login was successful
         if (caregiver == null) {
-            System.out.println("Login failed.");
+            session.println("Login failed.");
         } else {
-            System.out.println("Logged in as: " + username);
-            currentCaregiver = caregiver;
+            session.println("Logged in as: " + username);
+            session.loginCaregiver(caregiver);
         }
     }
 
-    private static void searchCaregiverSchedule(String[] tokens) {
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please login first");
-            return;
-        }
-        if (tokens.length != 2) {
-            System.out.println("Please try again");
+    private static void searchCaregiverSchedule(Session session, String[] tokens) {
+        if (tokens.length >= 3) {
+            searchCaregiverSchedules(session, tokens);
             return;
         }
         String date = tokens[1];
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-        String getCaregiver = "SELECT Username FROM Availabilities WHERE Time = ? ORDER BY Username";
-        String getVaccine = "SELECT Name, Doses FROM Vaccines";
         try {
             Date d = Date.valueOf(date);
-            PreparedStatement statement1 = con.prepareStatement(getCaregiver);
-            statement1.setDate(1, d);
-            ResultSet resultSet1 = statement1.executeQuery();
-            while(resultSet1.next()) {
-                String username = resultSet1.getString("Username");
-                System.out.println(username);
+            // the index only holds dates from today onwards
+            AvailabilityIndex index = AvailabilityIndex.ifLoaded();
+            boolean indexed = index != null && !d.toLocalDate().isBefore(LocalDate.now());
+            List<String> caregivers = indexed ? index.caregivers(d) : Repositories.availability().caregivers(d);
+            for (String username : caregivers) {
+                session.println(username);
             }
-            PreparedStatement statement2 = con.prepareStatement(getVaccine);
-            ResultSet resultSet2 = statement2.executeQuery();
-            while(resultSet2.next()) {
-                System.out.println(resultSet2.getString("Name") + " " +
-                        resultSet2.getInt("Doses"));
+            for (Map.Entry<String, Integer> vaccine : VaccineCache.getInstance().getAll().entrySet()) {
+                session.println(vaccine.getKey() + " " + vaccine.getValue());
             }
         } catch (IllegalArgumentException e) {
-            System.out.println("Please try again");
+            session.println("Please try again");
         } catch (SQLException e) {
-            System.out.println("Please try again");
+            session.println("Please try again");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
     } // TODO: Part 2
 
-    private static void reserve(String[] tokens) {
-        // Pre-Checks
-        if (currentCaregiver != null) {
-            System.out.println("Please login as a patient");
+    // search_caregiver_schedule <start_date> <end_date> [names <n>] [compact]: the number of available
+    // caregivers on every date of the range, optionally with the first n of them, from one range scan
+    private static void searchCaregiverSchedules(Session session, String[] tokens) {
+        int names = 0;
+        boolean compact = false;
+        Date start;
+        Date end;
+        try {
+            start = Date.valueOf(tokens[1]);
+            end = Date.valueOf(tokens[2]);
+            for (int i = 3; i < tokens.length; i++) {
+                if (tokens[i].equals("compact")) {
+                    compact = true;
+                } else if (tokens[i].equals("names") && i + 1 < tokens.length) {
+                    names = Integer.parseInt(tokens[++i]);
+                } else {
+                    session.println("Please try again");
+                    return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            session.println("Please try again");
             return;
         }
-        if (currentPatient == null) {
-            System.out.println("Please login first");
+        long first = start.toLocalDate().toEpochDay();
+        long last = end.toLocalDate().toEpochDay();
+        if (names < 0 || last < first || last - first >= Recurrence.MAX_DATES) {
+            session.println("Please enter a valid date range!");
             return;
         }
-        if (tokens.length != 3) {
-            System.out.println("Please try again");
-            return;
+        try {
+            // the index only holds dates from today onwards
+            AvailabilityIndex index = AvailabilityIndex.ifLoaded();
+            boolean indexed = index != null && !start.toLocalDate().isBefore(LocalDate.now());
+            List<AvailabilitySummary> summaries = indexed ? index.summarize(start, end, names) :
+                    Repositories.availability().summarize(start, end, names);
+
+            // fill in the dates nobody is available on
+            int[] counts = new int[(int) (last - first + 1)];
+            List<List<String>> caregivers = new ArrayList<>(Collections.nCopies(counts.length,
+                    Collections.<String>emptyList()));
+            for (AvailabilitySummary summary : summaries) {
+                int day = (int) (summary.getDate().toLocalDate().toEpochDay() - first);
+                counts[day] = summary.getCaregivers();
+                caregivers.set(day, summary.getFirstCaregivers());
+            }
+            if (compact) {
+                StringBuilder line = new StringBuilder().append(start).append(' ').append(end).append(' ');
+                for (int day = 0; day < counts.length; day++) {
+                    line.append(day == 0 ? "" : ",").append(counts[day]);
+                }
+                session.println(line.toString());
+            } else {
+                for (int day = 0; day < counts.length; day++) {
+                    StringBuilder line = new StringBuilder().append(LocalDate.ofEpochDay(first + day))
+                            .append(' ').append(counts[day]);
+                    for (String username : caregivers.get(day)) {
+                        line.append(' ').append(username);
+                    }
+                    session.println(line.toString());
+                }
+            }
+            for (Map.Entry<String, Integer> vaccine : VaccineCache.getInstance().getAll().entrySet()) {
+                session.println(vaccine.getKey() + " " + vaccine.getValue());
+            }
+        } catch (SQLException e) {
+            session.println("Please try again");
+            e.printStackTrace();
         }
+    }
+
+    private static void reserve(Session session, String[] tokens) {
         // Parse Tokens
         String date = tokens[1];
         String vaccine = tokens[2];
-        String patient = currentPatient.getUsername();
-        // Create connection
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-        // SQL Statements
-        String getCaregiver = "SELECT Username FROM Availabilities WHERE Time = ? ORDER BY Username";
-        String getID = "SELECT id From Appointment ORDER BY id DESC";
-        String removeAvailability = "DELETE FROM Availabilities WHERE Time = ? AND Username = ?";
-        String addAppointment = "INSERT INTO Appointment VALUES (?,?,?,?,?)";
+        String patient = session.getCurrentPatient().getUsername();
         try {
-            // Get caregiver
             Date d = Date.valueOf(date);
-            PreparedStatement GCStatement = con.prepareStatement(getCaregiver);
-            GCStatement.setDate(1,d);
-            ResultSet GCResultSet = GCStatement.executeQuery();
-            if(!GCResultSet.next()){
-                System.out.println("No caregiver is available");
-                return;
-            }
-            String caregiver = GCResultSet.getString("Username");
-            // Check Vaccine availability
-            Vaccine helperVaccine = new Vaccine.VaccineGetter(vaccine).get();
-            if (helperVaccine == null) {
-                System.out.println("Please try again");
-                return;
+            Reservation reservation = Repositories.appointments().reserve(patient, d, vaccine);
+            switch (reservation.getStatus()) {
+                case CONFIRMED:
+                    session.println("Appointment ID " + reservation.getAppointmentId() +
+                            ", Caregiver username " + reservation.getCaregiver());
+                    break;
+                case NO_CAREGIVER:
+                    session.println("No caregiver is available");
+                    break;
+                case NO_DOSES:
+                    session.println("Not enough available doses");
+                    break;
+                default:
+                    session.println("Please try again");
             }
-            if (helperVaccine.getAvailableDoses()==0) {
-                System.out.println("Not enough available doses");
-                return;
-            }
-            // Get largest id number
-            int currentID;
-            PreparedStatement GIDStatement = con.prepareStatement(getID);
-            ResultSet GIDResultSet = GIDStatement.executeQuery();
-            if(!GIDResultSet.next()){
-                currentID = 1;
-            } else {
-                currentID = GIDResultSet.getInt("id") + 1;
-            }
-            // Remove caregiver availability
-            PreparedStatement RAStatement = con.prepareStatement(removeAvailability);
-            RAStatement.setDate(1, d);
-            RAStatement.setString(2, caregiver);
-            RAStatement.executeUpdate();
-            // Change vaccine dose
-            helperVaccine.decreaseAvailableDoses(1);
-            // Update Appointment
-            PreparedStatement APStatement = con.prepareStatement(addAppointment);
-            APStatement.setInt(1, currentID);
-            APStatement.setString(2, patient);
-            APStatement.setString(3, caregiver);
-            APStatement.setString(4, helperVaccine.getVaccineName());
-            APStatement.setDate(5, d);
-            APStatement.executeUpdate();
-            System.out.println("Appointment ID "+currentID+", Caregiver username "+caregiver);
         } catch (IllegalArgumentException e) {
-            System.out.println("Please try again");
+            session.println("Please try again");
         } catch (SQLException e) {
-            System.out.println("PLease try again");
+            session.println("Please try again");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
     } // TODO: Part 2
 
-    private static void uploadAvailability(String[] tokens) {
+    private static void uploadAvailability(Session session, String[] tokens) {
         // upload_availability <date>
-        // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
-            return;
-        }
-        // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
-        if (tokens.length != 2) {
-            System.out.println("Please try again!");
+        // upload_availability <start_date> <end_date> [daily|weekdays|weekends|MON,WED,...]
+        if (tokens.length > 2) {
+            uploadAvailabilityRange(session, tokens);
             return;
         }
         String date = tokens[1];
         try {
             Date d = Date.valueOf(date);
-            currentCaregiver.uploadAvailability(d);
-            System.out.println("Availability uploaded!");
+            session.getCurrentCaregiver().uploadAvailability(d);
+            session.println("Availability uploaded!");
         } catch (IllegalArgumentException e) {
-            System.out.println("Please enter a valid date!");
+            session.println("Please enter a valid date!");
         } catch (SQLException e) {
-            System.out.println("Error occurred when uploading availability");
+            session.println("Error occurred when uploading availability");
             e.printStackTrace();
         }
     }
 
-    private static void cancel(String[] tokens) {
-        // Pre-Checks
-        if (currentCaregiver==null && currentPatient==null) {
-            System.out.println("Please login first");
+    private static void uploadAvailabilityRange(Session session, String[] tokens) {
+        List<Date> dates;
+        try {
+            Recurrence recurrence = tokens.length == 4 ? Recurrence.parse(tokens[3]) : Recurrence.daily();
+            dates = recurrence.expand(Date.valueOf(tokens[1]), Date.valueOf(tokens[2]));
+        } catch (IllegalArgumentException e) {
+            session.println("Please enter a valid date range!");
             return;
         }
-        if (tokens.length != 2) {
-            System.out.println("Invalid command statement, please try again.");
-            return;
+        try {
+            int added = session.getCurrentCaregiver().uploadAvailability(dates);
+            session.println("Availability uploaded for " + added + " dates, " +
+                    (dates.size() - added) + " already uploaded!");
+        } catch (SQLException e) {
+            session.println("Error occurred when uploading availability");
+            e.printStackTrace();
         }
+    }
+
+    private static void cancel(Session session, String[] tokens) {
         String id = tokens[1];
-        // Create SQL Statement
-        String getAppointment = "SELECT PName, CName, VName, Time FROM Appointment WHERE id = "+id;
-        String removeAppointment = "DELETE FROM Appointment WHERE id = "+id;
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
         try {
             // Gather appointment information
-            PreparedStatement statement = con.prepareStatement(getAppointment);
-            ResultSet resultSet = statement.executeQuery();
-            if (!resultSet.next()) {
-                System.out.println("Invalid id, please try again.");
+            Appointment appointment = Repositories.appointments().find(Integer.parseInt(id));
+            if (appointment == null) {
+                session.println("Invalid id, please try again.");
                 return;
             }
-            String PName = resultSet.getString("PName");
-            String CName = resultSet.getString("CName");
-            String VName = resultSet.getString("VName");
-            Date date = resultSet.getDate("Time");
             // Check if appointment belongs to the user logged in
-            if (currentPatient != null) {
-                if (!currentPatient.getUsername().equals(PName)) {
-                    System.out.println("You can only cancel your own schedule!");
+            if (session.getCurrentPatient() != null) {
+                if (!session.getCurrentPatient().getUsername().equals(appointment.getPatient())) {
+                    session.println("You can only cancel your own schedule!");
                     return;
                 }
             }
-            if (currentCaregiver != null) {
-                if(!currentCaregiver.getUsername().equals(CName)) {
-                    System.out.println("You can only cancel your own schedule!");
+            if (session.getCurrentCaregiver() != null) {
+                if(!session.getCurrentCaregiver().getUsername().equals(appointment.getCaregiver())) {
+                    session.println("You can only cancel your own schedule!");
                     return;
                 }
             }
-            // Cancel the appointment
-            PreparedStatement statement2 = con.prepareStatement(removeAppointment);
-            statement2.executeUpdate();
-            // Put back vaccine dose
-            Vaccine vaccine = new Vaccine.VaccineGetter(VName).get();
-            vaccine.increaseAvailableDoses(1);
-            // Put back caregiver availability
-            String addAvailability = "INSERT INTO Availabilities VALUES (?,?)";
-            PreparedStatement statement3 = con.prepareStatement(addAvailability);
-            statement3.setDate(1, date);
-            statement3.setString(2,CName);
-            statement3.executeUpdate();
+            // Cancel the appointment, putting back the vaccine dose and the caregiver availability
+            if (!Repositories.appointments().cancel(appointment)) {
+                session.println("Invalid id, please try again.");
+                return;
+            }
             // Finish Statement
-            System.out.println("Successfully canceled appointment "+id);
+            session.println("Successfully canceled appointment "+id);
+        } catch (NumberFormatException e) {
+            session.println("Invalid id, please try again.");
         } catch (SQLException e) {
-            System.out.println("Please try again");
+            session.println("Please try again");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
     } // TODO: Extra credit
 
-    private static void addDoses(String[] tokens) {
-        // add_doses <vaccine> <number>
-        // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
+    private static void cancelBulk(Session session, String[] tokens) {
+        // cancel_bulk <date>: the logged-in caregiver cannot work that day
+        // recalls and date ranges touch everyone's schedule and are admin operations, see BulkCanceller
+        BulkCancellation cancellation;
+        try {
+            Date date = Date.valueOf(tokens[1]);
+            cancellation = new BulkCancellation.BulkCancellationBuilder(date, date)
+                    .caregiver(session.getCurrentCaregiver().getUsername()).withdrawCaregiver().build();
+        } catch (IllegalArgumentException e) {
+            session.println("Please try again");
             return;
         }
-        // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Please try again!");
-            return;
+        try {
+            // every cancelled appointment is a notification for its patient, printed as it arrives
+            BulkCanceller.cancel(cancellation, session::println);
+        } catch (SQLException e) {
+            session.println("Please try again");
+            e.printStackTrace();
         }
+    }
+
+    private static void addDoses(Session session, String[] tokens) {
+        // add_doses <vaccine> <number>
         String vaccineName = tokens[1];
         int doses = Integer.parseInt(tokens[2]);
         Vaccine vaccine = null;
         try {
             vaccine = new Vaccine.VaccineGetter(vaccineName).get();
         } catch (SQLException e) {
-            System.out.println("Error occurred when adding doses");
+            session.println("Error occurred when adding doses");
             e.printStackTrace();
         }
-        // check 3: if getter returns null, it means that we need to create the vaccine and insert it into the Vaccines
+        // check 1: if getter returns null, it means that we need to create the vaccine and insert it into the Vaccines
         //          table
         if (vaccine == null) {
             try {
                 vaccine = new Vaccine.VaccineBuilder(vaccineName, doses).build();
                 vaccine.saveToDB();
             } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
+                session.println("Error occurred when adding doses");
                 e.printStackTrace();
             }
         } else {
@@ -553,73 +601,111 @@ public class Scheduler {
             try {
                 vaccine.increaseAvailableDoses(doses);
             } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
+                session.println("Error occurred when adding doses");
                 e.printStackTrace();
             }
         }
-        System.out.println("Doses updated!");
+        session.println("Doses updated!");
     }
 
-    private static void showAppointments(String[] tokens) {
-        // Pre-Check
-        if (currentCaregiver==null && currentPatient==null) {
-            System.out.println("Please login first");
-            return;
+    private static void importDoses(Session session, String[] tokens) {
+        // import_doses <file>
+        try {
+            Path file = DoseImporter.resolve(tokens[1], session.isRemote());
+            if (file == null) {
+                session.println("Please import a file from the import directory!");
+                return;
+            }
+            DoseImporter.Result result = new DoseImporter().importFile(file);
+            session.println(result.toString());
+        } catch (InvalidPathException | IOException e) {
+            session.println("Could not read " + tokens[1]);
+        } catch (IllegalArgumentException e) {
+            session.println(e.getMessage() + ", no doses were imported");
+        } catch (SQLException e) {
+            session.println("Error occurred when importing doses");
+            e.printStackTrace();
         }
-        if (tokens.length != 1) {
-            System.out.println("Please try again");
+    }
+
+    private static void showAppointments(Session session, String[] tokens) {
+        // show_appointments [<start_date> <end_date>] [after <date> <appointment_id>] [limit <n>]
+        boolean caregiver = session.getCurrentCaregiver() != null;
+        String username = caregiver ? session.getCurrentCaregiver().getUsername() :
+                session.getCurrentPatient().getUsername();
+        AppointmentQuery.AppointmentQueryBuilder query = new AppointmentQuery.AppointmentQueryBuilder(username, caregiver);
+        // the command that shows the next page repeats the range and limit
+        StringBuilder next = new StringBuilder("show_appointments");
+        int limit = APPOINTMENTS_PAGE_SIZE;
+        String limitToken = "";
+        try {
+            int i = 1;
+            if (tokens.length >= 3 && !tokens[1].equals("after") && !tokens[1].equals("limit")) {
+                query.between(Date.valueOf(tokens[1]), Date.valueOf(tokens[2]));
+                next.append(" ").append(tokens[1]).append(" ").append(tokens[2]);
+                i = 3;
+            }
+            for (; i < tokens.length; i += 2) {
+                if (tokens[i].equals("after") && i + 2 < tokens.length) {
+                    query.after(Date.valueOf(tokens[i + 1]), Integer.parseInt(tokens[i + 2]));
+                    i++;
+                } else if (tokens[i].equals("limit") && i + 1 < tokens.length) {
+                    limit = Integer.parseInt(tokens[i + 1]);
+                    // a page needs at least one appointment to continue the next page after
+                    if (limit < 1) {
+                        session.println("Please enter a limit of at least 1!");
+                        return;
+                    }
+                    limitToken = " limit " + limit;
+                } else {
+                    session.println("Please try again");
+                    return;
+                }
+            }
+            query.limit(limit);
+        } catch (IllegalArgumentException e) {
+            session.println("Please try again");
             return;
         }
-        if (currentCaregiver != null) {
-            showAppointmentsHelper("caregiver");
-        } else {
-            showAppointmentsHelper("patient");
-        }
+        showAppointmentsHelper(session, query.build(), next, limitToken);
     } // TODO: Part 2
 
-    private static void showAppointmentsHelper(String type) {
-        // Set SQL Statement
-        String loginAs;
-        String toGet;
-        String username;
-        if (type.equals("caregiver")) {
-            loginAs = "CName";
-            toGet = "PName";
-            username = currentCaregiver.getUsername();
-        } else {
-            loginAs = "PName";
-            toGet = "CName";
-            username = currentPatient.getUsername();
-        }
-        String getAppointment = "SELECT id, VName, Time, "+toGet+" FROM Appointment WHERE "+
-                loginAs+" = "+"'"+username+"'";
-        // Get data and print data
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+    private static void showAppointmentsHelper(Session session, AppointmentQuery query, StringBuilder next,
+                                               String limitToken) {
+        // rows are printed as they are read instead of being collected first
+        Appointment[] last = new Appointment[1];
         try {
-            PreparedStatement statement = con.prepareStatement(getAppointment);
-            ResultSet resultSet = statement.executeQuery();
-            while(resultSet.next()) {
-                System.out.println(resultSet.getInt("id")+" "+
-                                resultSet.getString("VName")+" "+
-                                resultSet.getDate("Time")+" "+
-                                resultSet.getString(toGet));
+            int shown = Repositories.appointments().scan(query, appointment -> {
+                session.println(appointment.getId()+" "+
+                                appointment.getVaccineName()+" "+
+                                appointment.getTime()+" "+
+                                (query.isCaregiver() ? appointment.getPatient() : appointment.getCaregiver()));
+                last[0] = appointment;
+            });
+            // a full page may be followed by more appointments
+            if (shown == query.getLimit()) {
+                session.println("Next page: " + next + " after " + last[0].getTime() + " " + last[0].getId() +
+                        limitToken);
             }
         } catch (SQLException e) {
-            System.out.println("PLease try again");
+            session.println("PLease try again");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
     }
 
-    private static void logout(String[] tokens) {
-        if (currentCaregiver==null && currentPatient==null) {
-            System.out.println("Please login first");
-        } else {
-            currentCaregiver = null;
-            currentPatient = null;
-            System.out.println("Successfully logged out");
+    private static void stats(Session session, String[] tokens) {
+        for (String line : Metrics.report()) {
+            session.println(line);
         }
+    }
+
+    private static void logout(Session session, String[] tokens) {
+        session.logout();
+        session.println("Successfully logged out");
     } // TODO: Part 2
+
+    private static void quit(Session session, String[] tokens) {
+        session.println("Bye!");
+        session.end();
+    }
 }
@@ -0,0 +1,60 @@
+package scheduler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the scheduler command language to many TCP clients at once.
+ *
+ * Every client gets its own Session, so logins are per connection, and is handled on its own virtual thread
+ * when the runtime supports them (falling back to a cached platform thread pool otherwise). All sessions
+ * share the process-wide connection pool, so the number of clients is not bounded by database connections.
+ */
+public class SchedulerServer {
+
+    private final int port;
+    private final ExecutorService executor = newPerClientExecutor();
+
+    public SchedulerServer(int port) {
+        this.port = port;
+    }
+
+    public void serve() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            System.out.println("Scheduler server listening on port " + serverSocket.getLocalPort());
+            while (true) {
+                Socket client = serverSocket.accept();
+                executor.execute(() -> handle(client));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void handle(Socket client) {
+        try (Socket socket = client) {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintStream out = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+            Scheduler.run(new Session(in, out, true, true));
+        } catch (IOException e) {
+            // the client went away, its session simply ends
+        }
+    }
+
+    // virtual threads need Java 21, look them up reflectively so the code still runs on older runtimes
+    private static ExecutorService newPerClientExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package scheduler;
+
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * The state of one user's conversation with the scheduler: who is logged in, where commands come from and
+ * where replies go. The interactive console uses one session; server mode creates one per client.
+ */
+public class Session {
+
+    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
+    //       since only one user can be logged-in at a time in a session
+    private Caregiver currentCaregiver = null;
+    private Patient currentPatient = null;
+
+    private final BufferedReader in;
+    private final PrintStream out;
+    private final boolean interactive;
+    // a remote session talks to a server client, who must not reach the server's files
+    private final boolean remote;
+    private volatile boolean ended = false;
+    // the System.nanoTime() when the last command that may have written finished, 0 if none did
+    private volatile long lastWrite = 0;
+
+    public Session(BufferedReader in, PrintStream out) {
+        this(in, out, true);
+    }
+
+    // a non-interactive session never prompts its user for more input, e.g. when running a batch file
+    public Session(BufferedReader in, PrintStream out, boolean interactive) {
+        this(in, out, interactive, false);
+    }
+
+    public Session(BufferedReader in, PrintStream out, boolean interactive, boolean remote) {
+        this.in = in;
+        this.out = out;
+        this.interactive = interactive;
+        this.remote = remote;
+    }
+
+    /**
+     * Returns a session for the same logged-in user that writes to a different output. Used to run read-only
+     * commands concurrently while keeping their output apart.
+     */
+    public Session withOutput(PrintStream otherOut) {
+        Session session = new Session(null, otherOut, false, this.remote);
+        session.currentCaregiver = this.currentCaregiver;
+        session.currentPatient = this.currentPatient;
+        session.lastWrite = this.lastWrite;
+        return session;
+    }
+
+    public Caregiver getCurrentCaregiver() {
+        return currentCaregiver;
+    }
+
+    public Patient getCurrentPatient() {
+        return currentPatient;
+    }
+
+    public boolean isLoggedIn() {
+        return currentCaregiver != null || currentPatient != null;
+    }
+
+    public void loginCaregiver(Caregiver caregiver) {
+        this.currentCaregiver = caregiver;
+        this.currentPatient = null;
+    }
+
+    public void loginPatient(Patient patient) {
+        this.currentPatient = patient;
+        this.currentCaregiver = null;
+    }
+
+    public void logout() {
+        this.currentCaregiver = null;
+        this.currentPatient = null;
+    }
+
+    // later reads of this session have to see what it wrote so far, even on a read replica
+    public void wrote() {
+        lastWrite = System.nanoTime();
+    }
+
+    public long getLastWrite() {
+        return lastWrite;
+    }
+
+    public boolean isInteractive() {
+        return interactive;
+    }
+
+    public boolean isRemote() {
+        return remote;
+    }
+
+    // the user has quit, no more commands are read
+    public void end() {
+        ended = true;
+    }
+
+    public boolean isEnded() {
+        return ended;
+    }
+
+    // returns null once the input is exhausted
+    public String readLine() throws IOException {
+        return in.readLine();
+    }
+
+    public void print(String text) {
+        out.print(text);
+        out.flush();
+    }
+
+    public void println() {
+        out.println();
+    }
+
+    public void println(String text) {
+        out.println(text);
+    }
+
+    public void flush() {
+        out.flush();
+    }
+}
@@ -0,0 +1,321 @@
+package scheduler.cache;
+
+import scheduler.db.ConnectionManager;
+import scheduler.db.NamedStatement;
+import scheduler.repository.AvailabilitySummary;
+import scheduler.repository.Repositories;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-process copy of the Availabilities table from today onwards, used to answer schedule searches and
+ * to pick caregivers for reservations without a database round trip.
+ *
+ * Caregiver usernames are interned to small integer ids, and every date maps to a BitSet of the ids that
+ * are available on it. Usernames are interned and ordered case-insensitively, like the database compares
+ * them, so one caregiver written with different spellings keeps one id. Dates are kept in a sorted map so ranges of dates can be scanned in order.
+ *
+ * Consistency: writes made by this process (upload_availability, reserve, cancel) are applied to the index
+ * right after they commit. Writes made by other processes sharing the database are only seen when the
+ * index is reloaded, every AvailabilityRefreshSeconds (60 by default), so searches may be stale by up to
+ * that interval. The database stays authoritative for bookings: a caregiver picked from the index is only a
+ * hint, and reserve falls back to claiming any available row when the hint was already taken elsewhere or
+ * there is none. Write-throughs made while a reload is running are replayed onto the reloaded copy, so the
+ * reload neither loses a cancelled slot nor brings back a claimed one.
+ * Setting AvailabilityIndex=off disables the index, and callers then query the database directly.
+ */
+public class AvailabilityIndex {
+
+    private static final boolean journaled = System.getenv("Journal") != null && !System.getenv("Journal").isEmpty();
+    private static final AvailabilityIndex instance = create();
+
+    // keyed by the lower-cased username; names keeps the spelling first seen
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private volatile ConcurrentNavigableMap<Long, BitSet> dates = new ConcurrentSkipListMap<>();
+    private volatile boolean loaded = false;
+
+    // one reload at a time
+    private final Object reloading = new Object();
+    // write-throughs take this lock, a reload takes it to start logging them and to swap in its copy
+    private final Object writes = new Object();
+    // the write-throughs made since the running reload started, null while no reload runs
+    private List<Write> pending = null;
+
+    private AvailabilityIndex(long refreshSeconds) {
+        // with the journal this process is the only writer, and a reload would bring back caregivers claimed by
+        // records that are not applied yet; the journal loads the index itself once it has been replayed
+        if (journaled) {
+            return;
+        }
+        ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "availability-index-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(this::reloadQuietly, 0, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    private static AvailabilityIndex create() {
+        // the in-memory storage backend answers the same queries itself, and the index only reads the main database
+        if ("off".equalsIgnoreCase(System.getenv("AvailabilityIndex")) || Repositories.isInMemory() ||
+                Repositories.isSharded()) {
+            return null;
+        }
+        String setting = System.getenv("AvailabilityRefreshSeconds");
+        long refreshSeconds = setting == null || setting.isEmpty() ? 60 : Long.parseLong(setting.trim());
+        return new AvailabilityIndex(Math.max(1, refreshSeconds));
+    }
+
+    // returns null when the index is disabled
+    public static AvailabilityIndex getInstance() {
+        return instance;
+    }
+
+    // returns the index only once it has been loaded and can answer queries
+    public static AvailabilityIndex ifLoaded() {
+        return instance != null && instance.loaded ? instance : null;
+    }
+
+    /**
+     * Reloads the index from the database. The new copy is built on the side and swapped in, so queries
+     * never see a half-loaded index. The write-throughs made during the load are applied to the new copy in
+     * their order first; each of them already committed, so applying one the query saw again changes nothing.
+     */
+    public void reload() throws SQLException {
+        synchronized (reloading) {
+            load();
+        }
+    }
+
+    private void load() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        ConcurrentNavigableMap<Long, BitSet> fresh = new ConcurrentSkipListMap<>();
+        synchronized (writes) {
+            pending = new ArrayList<>();
+        }
+        try {
+            if (cm.createConnection() == null) {
+                throw new SQLException("No database connection available");
+            }
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.GET_AVAILABILITIES_FROM);
+            statement.setDate(1, Date.valueOf(LocalDate.now()));
+            statement.setFetchSize(10_000);
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                long day = resultSet.getDate("Time").toLocalDate().toEpochDay();
+                fresh.computeIfAbsent(day, k -> new BitSet()).set(intern(resultSet.getString("Username")));
+            }
+        } catch (SQLException | RuntimeException e) {
+            synchronized (writes) {
+                pending = null;
+            }
+            throw e;
+        } finally {
+            cm.closeConnection();
+        }
+        synchronized (writes) {
+            for (Write write : pending) {
+                apply(fresh, write.day, write.id, write.available);
+            }
+            pending = null;
+            dates = fresh;
+        }
+        loaded = true;
+    }
+
+    public void add(Date date, String username) {
+        write(key(date), intern(username), true);
+    }
+
+    public void remove(Date date, String username) {
+        // interned even if unknown, a running reload may be loading the caregiver
+        write(key(date), intern(username), false);
+    }
+
+    // the caregivers available on the date, sorted by username
+    public List<String> caregivers(Date date) {
+        BitSet caregivers = dates.get(key(date));
+        if (caregivers == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        synchronized (caregivers) {
+            // read the names under the lock so they include every id set in the BitSet
+            String[] snapshot = names;
+            for (int id = caregivers.nextSetBit(0); id >= 0; id = caregivers.nextSetBit(id + 1)) {
+                result.add(snapshot[id]);
+            }
+        }
+        result.sort(String.CASE_INSENSITIVE_ORDER);
+        return result;
+    }
+
+    // the first available caregiver in username order, or null if nobody is available on the date
+    public String firstCaregiver(Date date) {
+        BitSet caregivers = dates.get(key(date));
+        if (caregivers == null) {
+            return null;
+        }
+        String first = null;
+        synchronized (caregivers) {
+            String[] snapshot = names;
+            for (int id = caregivers.nextSetBit(0); id >= 0; id = caregivers.nextSetBit(id + 1)) {
+                if (first == null || String.CASE_INSENSITIVE_ORDER.compare(snapshot[id], first) < 0) {
+                    first = snapshot[id];
+                }
+            }
+        }
+        return first;
+    }
+
+    // takes the first available caregiver in username order off the date, returns null if nobody is available
+    public String claimFirst(Date date) {
+        synchronized (writes) {
+            BitSet caregivers = dates.get(key(date));
+            if (caregivers == null) {
+                return null;
+            }
+            int first = -1;
+            String[] snapshot;
+            synchronized (caregivers) {
+                snapshot = names;
+                for (int id = caregivers.nextSetBit(0); id >= 0; id = caregivers.nextSetBit(id + 1)) {
+                    if (first < 0 || String.CASE_INSENSITIVE_ORDER.compare(snapshot[id], snapshot[first]) < 0) {
+                        first = id;
+                    }
+                }
+                if (first < 0) {
+                    return null;
+                }
+                caregivers.clear(first);
+            }
+            if (pending != null) {
+                pending.add(new Write(key(date), first, false));
+            }
+            return snapshot[first];
+        }
+    }
+
+    // the dates from start to end that have a caregiver, in date order, with up to limit caregivers each
+    public List<AvailabilitySummary> summarize(Date start, Date end, int limit) {
+        List<AvailabilitySummary> summaries = new ArrayList<>();
+        for (Map.Entry<Long, BitSet> day : dates.subMap(key(start), true, key(end), true).entrySet()) {
+            BitSet caregivers = day.getValue();
+            int count;
+            List<String> first = new ArrayList<>();
+            synchronized (caregivers) {
+                count = caregivers.cardinality();
+                if (limit > 0) {
+                    String[] snapshot = names;
+                    for (int id = caregivers.nextSetBit(0); id >= 0; id = caregivers.nextSetBit(id + 1)) {
+                        first.add(snapshot[id]);
+                    }
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            first.sort(String.CASE_INSENSITIVE_ORDER);
+            summaries.add(new AvailabilitySummary(Date.valueOf(LocalDate.ofEpochDay(day.getKey())), count,
+                    first.size() > limit ? new ArrayList<>(first.subList(0, limit)) : first));
+        }
+        return summaries;
+    }
+
+    public int count(Date date) {
+        BitSet caregivers = dates.get(key(date));
+        if (caregivers == null) {
+            return 0;
+        }
+        synchronized (caregivers) {
+            return caregivers.cardinality();
+        }
+    }
+
+    private int intern(String username) {
+        String key = username.toLowerCase(Locale.ROOT);
+        Integer id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(key);
+            if (id == null) {
+                id = ids.size();
+                String[] current = names;
+                if (id == current.length) {
+                    String[] grown = new String[current.length * 2];
+                    System.arraycopy(current, 0, grown, 0, current.length);
+                    current = grown;
+                }
+                current[id] = username;
+                names = current;
+                // publish the name before the id so readers never find an id without a name
+                ids.put(key, id);
+            }
+            return id;
+        }
+    }
+
+    // applies a write-through to the live copy, and logs it for the copy a running reload is building
+    private void write(long day, int id, boolean available) {
+        synchronized (writes) {
+            apply(dates, day, id, available);
+            if (pending != null) {
+                pending.add(new Write(day, id, available));
+            }
+        }
+    }
+
+    private static void apply(ConcurrentNavigableMap<Long, BitSet> copy, long day, int id, boolean available) {
+        BitSet caregivers = available ? copy.computeIfAbsent(day, k -> new BitSet()) : copy.get(day);
+        if (caregivers == null) {
+            return;
+        }
+        synchronized (caregivers) {
+            caregivers.set(id, available);
+        }
+    }
+
+    private static long key(Date date) {
+        return date.toLocalDate().toEpochDay();
+    }
+
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // a caregiver becoming available (or not) on a day
+    private static class Write {
+        private final long day;
+        private final int id;
+        private final boolean available;
+
+        private Write(long day, int id, boolean available) {
+            this.day = day;
+            this.id = id;
+            this.available = available;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package scheduler.cache;
+
+import scheduler.repository.AccountRepository;
+import scheduler.repository.Repositories;
+import scheduler.util.BloomFilter;
+
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * A Bloom filter of the usernames taken in one account table, so that account creation only has to ask the
+ * database about names that might be taken.
+ *
+ * Each filter is built in the background from its table the first time it is used, and saveToDB adds new
+ * names as accounts are created. Until the filter is built every name counts as possibly taken. Names are
+ * lower-cased because the database compares them case-insensitively. Names created by other processes after
+ * the filter was built can be missed; the insert then fails on the primary key, which stays the source of
+ * truth. Size it with UsernameFilterCapacity (expected names per table, 1,000,000 by default) and
+ * UsernameFilterFpp (the false positive rate, 0.01 by default).
+ */
+public class UsernameFilter {
+
+    private static final long capacity = longSetting("UsernameFilterCapacity", 1_000_000);
+    private static final double falsePositiveRate = doubleSetting("UsernameFilterFpp", 0.01);
+
+    private static final UsernameFilter patients = new UsernameFilter("Patients", Repositories.patients());
+    private static final UsernameFilter caregivers = new UsernameFilter("Caregivers", Repositories.caregivers());
+
+    private final String table;
+    private final AccountRepository accounts;
+    private final BloomFilter filter = new BloomFilter(capacity, falsePositiveRate);
+    private volatile boolean loaded = false;
+
+    private UsernameFilter(String table, AccountRepository accounts) {
+        this.table = table;
+        this.accounts = accounts;
+        Thread loader = new Thread(this::loadQuietly, "username-filter-" + table);
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    public static UsernameFilter patients() {
+        return patients;
+    }
+
+    public static UsernameFilter caregivers() {
+        return caregivers;
+    }
+
+    // false means the name is definitely free, true means the database has to be asked
+    public boolean mightExist(String username) {
+        return !loaded || filter.mightContain(normalize(username));
+    }
+
+    public void add(String username) {
+        filter.add(normalize(username));
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public String describe() {
+        return String.format("%s username filter: %s, %d bits (%d KB), %d hashes, " +
+                        "sized for %d names at %.4f, estimated false positive rate now %.6f",
+                table, loaded ? "loaded" : "loading", filter.getBits(), filter.getMemoryBytes() / 1024,
+                filter.getHashes(), filter.getExpectedInsertions(), filter.getFalsePositiveRate(),
+                filter.getCurrentFalsePositiveRate());
+    }
+
+    private void load() throws SQLException {
+        accounts.forEachUsername(this::add);
+        loaded = true;
+    }
+
+    private void loadQuietly() {
+        try {
+            load();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String normalize(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private static long longSetting(String name, long defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    private static double doubleSetting(String name, double defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? defaultValue : Double.parseDouble(value.trim());
+    }
+}
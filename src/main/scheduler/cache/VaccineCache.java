@@ -0,0 +1,110 @@
+package scheduler.cache;
+
+import scheduler.repository.Repositories;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A read cache of the Vaccines table for browsing traffic such as search_caregiver_schedule.
+ *
+ * The Vaccine mutation methods and the reservation engine write their results through to the cache, so
+ * changes made by this process are visible immediately. Changes made by other processes are picked up when
+ * the cached copy is older than VaccineCacheMillis (30 seconds by default) and gets reloaded. The cache is
+ * never used to decide whether a booking can take a dose: reserve checks the Vaccines table when it commits.
+ * Names are compared case-insensitively, like the database does.
+ */
+public class VaccineCache {
+
+    private static final VaccineCache instance = new VaccineCache(stalenessSetting());
+
+    private final long stalenessNanos;
+    private volatile ConcurrentNavigableMap<String, Integer> doses = null;
+    private volatile long loadedAt = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public VaccineCache(long stalenessMillis) {
+        this.stalenessNanos = stalenessMillis * 1_000_000L;
+    }
+
+    private static long stalenessSetting() {
+        String setting = System.getenv("VaccineCacheMillis");
+        return setting == null || setting.isEmpty() ? 30_000 : Long.parseLong(setting.trim());
+    }
+
+    public static VaccineCache getInstance() {
+        return instance;
+    }
+
+    // every vaccine and its available doses, sorted by name
+    public Map<String, Integer> getAll() throws SQLException {
+        return Collections.unmodifiableMap(current());
+    }
+
+    // returns null for unknown vaccines
+    public Integer getDoses(String vaccineName) throws SQLException {
+        return current().get(vaccineName);
+    }
+
+    // records the number of doses the database holds after a write
+    public void update(String vaccineName, int availableDoses) {
+        ConcurrentNavigableMap<String, Integer> cached = doses;
+        if (cached != null) {
+            cached.put(vaccineName, availableDoses);
+        }
+    }
+
+    // applies a relative change the database has already committed
+    public void adjust(String vaccineName, int delta) {
+        ConcurrentNavigableMap<String, Integer> cached = doses;
+        if (cached != null) {
+            cached.computeIfPresent(vaccineName, (name, current) -> current + delta);
+        }
+    }
+
+    // forces the next read to reload, e.g. after a bulk write
+    public void invalidate() {
+        doses = null;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private ConcurrentNavigableMap<String, Integer> current() throws SQLException {
+        ConcurrentNavigableMap<String, Integer> cached = doses;
+        if (cached != null && System.nanoTime() - loadedAt < stalenessNanos) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        synchronized (this) {
+            // another thread may have reloaded while this one waited
+            cached = doses;
+            if (cached != null && System.nanoTime() - loadedAt < stalenessNanos) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            misses.incrementAndGet();
+            cached = load();
+            loadedAt = System.nanoTime();
+            doses = cached;
+            return cached;
+        }
+    }
+
+    private ConcurrentNavigableMap<String, Integer> load() throws SQLException {
+        ConcurrentNavigableMap<String, Integer> loaded = new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+        loaded.putAll(Repositories.vaccines().findAll());
+        return loaded;
+    }
+}
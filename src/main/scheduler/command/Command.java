@@ -0,0 +1,178 @@
+package scheduler.command;
+
+import scheduler.Session;
+import scheduler.db.ReplicaSet;
+import scheduler.metrics.LatencyHistogram;
+import scheduler.metrics.Metrics;
+
+/**
+ * A scheduler command: its name, how it is used and who may run it, plus the handler that carries it out.
+ * The registry checks the role and the number of tokens before the handler runs, replying with the command's
+ * own message when a check fails.
+ */
+public class Command {
+
+    public enum Role {
+        ANYONE,
+        LOGGED_OUT,
+        LOGGED_IN,
+        PATIENT,
+        CAREGIVER
+    }
+
+    public interface Handler {
+        void handle(Session session, String[] tokens);
+    }
+
+    private final String name;
+    private final String usage;
+    private final int minTokens;
+    private final int maxTokens;
+    private final String invalid;
+    private final Role role;
+    private final String notLoggedIn;
+    private final String denied;
+    private final boolean readOnly;
+    private final Handler handler;
+    private final LatencyHistogram latency;
+
+    private Command(CommandBuilder builder) {
+        this.name = builder.name;
+        this.usage = builder.usage;
+        this.minTokens = builder.minTokens;
+        this.maxTokens = builder.maxTokens;
+        this.invalid = builder.invalid;
+        this.role = builder.role;
+        this.notLoggedIn = builder.notLoggedIn;
+        this.denied = builder.denied;
+        this.readOnly = builder.readOnly;
+        this.handler = builder.handler;
+        this.latency = Metrics.command(builder.name);
+    }
+
+    // Getters
+    public String getName() {
+        return name;
+    }
+
+    public String getUsage() {
+        return usage;
+    }
+
+    // the number of tokens the command expects including its name, or -1 if it takes a variable number
+    public int getArity() {
+        return minTokens == maxTokens ? minTokens : -1;
+    }
+
+    public Role getRole() {
+        return role;
+    }
+
+    // read-only commands neither change the session nor the database and may run alongside each other
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    // returns the reply for a session that may not run the command with these tokens, or null if it may
+    String check(Session session, String[] tokens) {
+        switch (role) {
+            case LOGGED_OUT:
+                if (session.isLoggedIn()) {
+                    return denied;
+                }
+                break;
+            case LOGGED_IN:
+                if (!session.isLoggedIn()) {
+                    return notLoggedIn;
+                }
+                break;
+            case PATIENT:
+                if (session.getCurrentPatient() == null) {
+                    return session.isLoggedIn() ? denied : notLoggedIn;
+                }
+                break;
+            case CAREGIVER:
+                if (session.getCurrentCaregiver() == null) {
+                    return session.isLoggedIn() ? denied : notLoggedIn;
+                }
+                break;
+            default:
+                break;
+        }
+        if (tokens.length < minTokens || tokens.length > maxTokens) {
+            return invalid;
+        }
+        return null;
+    }
+
+    public void execute(Session session, String[] tokens) {
+        long start = System.nanoTime();
+        ReplicaSet.readAfter(session.getLastWrite());
+        try {
+            handler.handle(session, tokens);
+        } finally {
+            ReplicaSet.readAfter(0);
+            // anything else may have written, and the session's later reads have to see it
+            if (!readOnly) {
+                session.wrote();
+            }
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    public static class CommandBuilder {
+        private final String name;
+        private final Handler handler;
+        private String usage = "";
+        private int minTokens = 1;
+        private int maxTokens = Integer.MAX_VALUE;
+        private String invalid;
+        private Role role = Role.ANYONE;
+        private String notLoggedIn;
+        private String denied;
+        private boolean readOnly = false;
+
+        public CommandBuilder(String name, Handler handler) {
+            this.name = name;
+            this.handler = handler;
+        }
+
+        public CommandBuilder usage(String usage) {
+            this.usage = usage;
+            return this;
+        }
+
+        // the command takes exactly this many tokens including its name, otherwise the invalid message is shown
+        public CommandBuilder arity(int tokens, String invalid) {
+            return arity(tokens, tokens, invalid);
+        }
+
+        public CommandBuilder arity(int minTokens, int maxTokens, String invalid) {
+            this.minTokens = minTokens;
+            this.maxTokens = maxTokens;
+            this.invalid = invalid;
+            return this;
+        }
+
+        public CommandBuilder role(Role role, String denied) {
+            return role(role, denied, denied);
+        }
+
+        // a patient or caregiver command can tell a session nobody is logged in to apart from the wrong user
+        public CommandBuilder role(Role role, String notLoggedIn, String denied) {
+            this.role = role;
+            this.notLoggedIn = notLoggedIn;
+            this.denied = denied;
+            return this;
+        }
+
+        public CommandBuilder readOnly() {
+            this.readOnly = true;
+            return this;
+        }
+
+        public Command build() {
+            return new Command(this);
+        }
+    }
+}
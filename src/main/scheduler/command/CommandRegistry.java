@@ -0,0 +1,68 @@
+package scheduler.command;
+
+import scheduler.Session;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Maps command names to commands. Commands are kept in registration order, which is also the order the
+ * menu lists them in.
+ */
+public class CommandRegistry {
+
+    private final Map<String, Command> commands = new LinkedHashMap<>();
+
+    public CommandRegistry register(Command command) {
+        if (commands.putIfAbsent(command.getName(), command) != null) {
+            throw new IllegalArgumentException("Command already registered: " + command.getName());
+        }
+        return this;
+    }
+
+    // returns null for unknown commands
+    public Command get(String name) {
+        return commands.get(name);
+    }
+
+    public Collection<Command> getCommands() {
+        return Collections.unmodifiableCollection(commands.values());
+    }
+
+    // splits an input line into the command name and its arguments; a blank line has no tokens
+    public static String[] tokenize(String line) {
+        String trimmed = line.trim();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+    }
+
+    public void dispatch(Session session, String[] tokens) {
+        if (tokens.length == 0) {
+            session.println("Please try again!");
+            return;
+        }
+        Command command = get(tokens[0]);
+        if (command == null) {
+            session.println("Invalid operation name!");
+            return;
+        }
+        String problem = command.check(session, tokens);
+        if (problem != null) {
+            session.println(problem);
+            return;
+        }
+        command.execute(session, tokens);
+    }
+
+    public void printMenu(Session session) {
+        session.println("*** Please enter one of the following commands ***");
+        for (Command command : commands.values()) {
+            if (command.getUsage().isEmpty()) {
+                session.println("> " + command.getName());
+            } else {
+                session.println("> " + command.getName() + " " + command.getUsage());
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package scheduler.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How concurrent writers of Vaccines and Appointment rows are kept from overwriting each other, chosen with
+ * the Concurrency environment variable:
+ * - atomic (the default): every change is one relative UPDATE or DELETE, no row is read before it is written.
+ * - optimistic: the row is read with its Version and written back only if the Version is unchanged. When it
+ *   changed, the whole operation is retried after a random backoff, up to ConflictRetries (5) attempts.
+ * - pessimistic: the row is read WITH (UPDLOCK) inside the transaction, so conflicting writers wait for the
+ *   lock instead of retrying.
+ * Every write bumps the Version, whatever the strategy, so processes using different strategies can share a
+ * database.
+ */
+public class Concurrency {
+
+    public enum Strategy {
+        ATOMIC, OPTIMISTIC, PESSIMISTIC
+    }
+
+    private static final int maxAttempts = Math.max(1, ConnectionManager.intSetting("ConflictRetries", 5));
+    private static final long baseBackoffMicros = 500;
+    private static final long maxBackoffMicros = 50_000;
+
+    private static volatile Strategy strategy = strategySetting();
+
+    private static final AtomicLong conflicts = new AtomicLong();
+    private static final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Thrown when a compare-and-set found a different Version than was read. The transaction has to be
+     * rolled back and the operation retried.
+     */
+    public static class ConflictException extends SQLException {
+        private static final long serialVersionUID = 1L;
+
+        public ConflictException(String message) {
+            super(message);
+        }
+    }
+
+    public interface Operation<T> {
+        T run() throws SQLException;
+    }
+
+    // the vaccine row after a dose change
+    public static class Doses {
+        private final String name;
+        private final int doses;
+        private final boolean changed;
+
+        private Doses(String name, int doses, boolean changed) {
+            this.name = name;
+            this.doses = doses;
+            this.changed = changed;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDoses() {
+            return doses;
+        }
+
+        // false if the change would have left fewer than zero doses
+        public boolean isChanged() {
+            return changed;
+        }
+    }
+
+    private static Strategy strategySetting() {
+        String setting = System.getenv("Concurrency");
+        if (setting == null || setting.isEmpty()) {
+            return Strategy.ATOMIC;
+        }
+        try {
+            return Strategy.valueOf(setting.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Ignoring invalid value for Concurrency: " + setting);
+            return Strategy.ATOMIC;
+        }
+    }
+
+    public static Strategy getStrategy() {
+        return strategy;
+    }
+
+    // switches the strategy of the whole process, e.g. for benchmarks
+    public static void setStrategy(Strategy newStrategy) {
+        strategy = newStrategy;
+    }
+
+    // whether rows are read with their Version before they are written
+    public static boolean isVersioned() {
+        return strategy != Strategy.ATOMIC;
+    }
+
+    public static long getConflicts() {
+        return conflicts.get();
+    }
+
+    public static long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Runs the operation, and runs it again after a random backoff whenever it ends with a ConflictException.
+     * The backoff is drawn from zero to an exponentially growing cap, so writers that collided once are
+     * unlikely to collide again. The last conflict is thrown once the attempts are used up.
+     */
+    public static <T> T withRetry(Operation<T> operation) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return operation.run();
+            } catch (ConflictException e) {
+                conflicts.incrementAndGet();
+                if (attempt == maxAttempts) {
+                    failures.incrementAndGet();
+                    throw e;
+                }
+                long cap = Math.min(maxBackoffMicros, baseBackoffMicros << (attempt - 1));
+                long backoff = ThreadLocalRandom.current().nextLong(cap + 1);
+                try {
+                    Thread.sleep(backoff / 1000, (int) (backoff % 1000) * 1000);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Changes the doses of a vaccine by delta with the current versioned strategy, on the caller's connection
+     * and inside the caller's transaction. Returns null for unknown vaccines, and a result that is not
+     * changed if fewer than zero doses would be left.
+     */
+    public static Doses changeDoses(ConnectionManager cm, String vaccineName, int delta) throws SQLException {
+        PreparedStatement read = cm.prepareStatement(strategy == Strategy.PESSIMISTIC ?
+                NamedStatement.LOCK_VACCINE : NamedStatement.GET_VACCINE_VERSION);
+        read.setString(1, vaccineName);
+        ResultSet row = read.executeQuery();
+        if (!row.next()) {
+            return null;
+        }
+        String name = row.getString("Name");
+        int doses = row.getInt("Doses");
+        int version = row.getInt("Version");
+        if (doses + delta < 0) {
+            return new Doses(name, doses, false);
+        }
+
+        PreparedStatement write = cm.prepareStatement(NamedStatement.SET_DOSES);
+        write.setInt(1, doses + delta);
+        write.setString(2, name);
+        write.setInt(3, version);
+        if (write.executeUpdate() == 0) {
+            throw new ConflictException("Vaccine " + name + " was changed concurrently");
+        }
+        return new Doses(name, doses + delta, true);
+    }
+
+    /**
+     * Deletes an appointment with the current versioned strategy, inside the caller's transaction. Returns
+     * false if the appointment does not exist.
+     */
+    public static boolean removeAppointment(ConnectionManager cm, int id, int version) throws SQLException {
+        if (strategy == Strategy.PESSIMISTIC) {
+            PreparedStatement lock = cm.prepareStatement(NamedStatement.LOCK_APPOINTMENT);
+            lock.setInt(1, id);
+            ResultSet row = lock.executeQuery();
+            if (!row.next()) {
+                return false;
+            }
+            version = row.getInt("Version");
+        }
+        PreparedStatement remove = cm.prepareStatement(NamedStatement.REMOVE_APPOINTMENT_VERSION);
+        remove.setInt(1, id);
+        remove.setInt(2, version);
+        if (remove.executeUpdate() == 1) {
+            return true;
+        }
+        // the appointment is either gone or was changed since it was read
+        PreparedStatement exists = cm.prepareStatement(NamedStatement.GET_APPOINTMENT);
+        exists.setInt(1, id);
+        if (exists.executeQuery().next()) {
+            throw new ConflictException("Appointment " + id + " was changed concurrently");
+        }
+        return false;
+    }
+}
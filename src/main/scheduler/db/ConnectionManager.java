@@ -1,20 +1,30 @@
 package scheduler.db;
 
+import scheduler.metrics.Metrics;
+
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 public class ConnectionManager {
 
-    private final String driverName = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
-    private final String connectionUrl = "jdbc:sqlserver://" + System.getenv("Server") +
+    private static final String driverName = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
+    private static final String connectionUrl = System.getenv("DBUrl") != null ? System.getenv("DBUrl") :
+            "jdbc:sqlserver://" + System.getenv("Server") +
             ".database.windows.net:1433;database=" + System.getenv("DBName");
-    private final String userName = System.getenv("UserID");
-    private final String userPass = System.getenv("Password");
+    private static final String userName = System.getenv("UserID");
+    private static final String userPass = System.getenv("Password");
 
-    private Connection con = null;
+    // pool settings, all optional
+    private static final int poolMinSize = intSetting("PoolMinSize", 2);
+    private static final int poolMaxSize = intSetting("PoolMaxSize", 16);
+    private static final long poolIdleTimeoutMillis = intSetting("PoolIdleTimeout", 300) * 1000L;
+    private static final long poolAcquireTimeoutMillis = intSetting("PoolAcquireTimeout", 5000);
+    private static final int poolValidationTimeoutSeconds = 2;
+    private static final int statementCacheSize = intSetting("StatementCacheSize", 32);
 
-    public ConnectionManager() {
+    static {
         try {
             Class.forName(driverName);
         } catch (ClassNotFoundException e) {
@@ -22,20 +32,108 @@ public class ConnectionManager {
         }
     }
 
+    // the pool is shared by every ConnectionManager in the process and created on first use
+    private static class Holder {
+        private static final ConnectionPool POOL = createPool();
+
+        private static ConnectionPool createPool() {
+            ConnectionPool pool = ConnectionManager.createPool(connectionUrl);
+            pool.prefill();
+            return pool;
+        }
+    }
+
+    // null for the shared pool of the main database
+    private final ConnectionPool pool;
+    private PooledConnection pooled = null;
+    private Connection con = null;
+    private long borrowedAt = 0;
+
+    public ConnectionManager() {
+        this(null);
+    }
+
+    // borrows from the given pool instead, e.g. the pool of a shard
+    public ConnectionManager(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * A connection manager for reads that may be served by a read replica, see ReplicaSet. Use it only for
+     * single statements outside of transactions that can live with slightly out of date results.
+     */
+    public static ConnectionManager forReads() {
+        ReplicaSet replicas = ReplicaSet.getInstance();
+        return new ConnectionManager(replicas == null ? null : replicas.choose());
+    }
+
+    public static ConnectionPool getPool() {
+        return Holder.POOL;
+    }
+
+    // a pool for another database with the same credentials and pool settings, opening connections on demand
+    public static ConnectionPool createPool(String url) {
+        return new ConnectionPool(url, userName, userPass, poolMinSize, poolMaxSize, poolIdleTimeoutMillis,
+                poolAcquireTimeoutMillis, poolValidationTimeoutSeconds, statementCacheSize);
+    }
+
+    // opens a connection of its own to the main database, outside of any pool; the caller closes it
+    public static Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(connectionUrl, userName, userPass);
+    }
+
+    private ConnectionPool pool() {
+        return pool != null ? pool : getPool();
+    }
+
+    // borrows a connection from the pool, closeConnection() gives it back and closes the statements created on it
     public Connection createConnection() {
+        long start = System.nanoTime();
         try {
-            con = DriverManager.getConnection(connectionUrl, userName, userPass);
+            pooled = pool().borrow();
+            con = pooled.getConnection();
+            borrowedAt = System.nanoTime();
+            Metrics.connectionAcquire().record(borrowedAt - start);
         } catch (SQLException e) {
             e.printStackTrace();
         }
         return con;
     }
 
+    // prepares one of the scheduler's fixed statements, reusing it if this connection prepared it before
+    public PreparedStatement prepareStatement(NamedStatement statement) throws SQLException {
+        return prepareStatement(statement.getSql());
+    }
+
+    // prepares a statement through the borrowed connection's statement cache; do not close the result
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        if (pooled == null) {
+            throw new SQLException("No database connection available");
+        }
+        return pooled.getStatements().prepare(sql);
+    }
+
     public void closeConnection() {
+        if (pooled == null) {
+            return;
+        }
+        pool().release(pooled);
+        Metrics.database().record(System.nanoTime() - borrowedAt);
+        pooled = null;
+        con = null;
+    }
+
+    // reads an optional integer setting from the environment
+    public static int intSetting(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
         try {
-            this.con.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Ignoring invalid value for " + name + ": " + value);
+            return defaultValue;
         }
     }
 }
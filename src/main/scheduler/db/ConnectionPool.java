@@ -0,0 +1,200 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of physical JDBC connections shared by every ConnectionManager.
+ *
+ * Idle connections are kept in LIFO order so the most recently used (and most likely still healthy)
+ * connection is handed out first, while the oldest ones drift to the tail where the evictor closes
+ * them once they have been idle for longer than the idle timeout. The pool never shrinks below its
+ * minimum size and never opens more than its maximum size.
+ */
+public class ConnectionPool {
+
+    private final String url;
+    private final String userName;
+    private final String userPass;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long acquireTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger total = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+
+    public ConnectionPool(String url, String userName, String userPass, int minSize, int maxSize,
+                          long idleTimeoutMillis, long acquireTimeoutMillis, int validationTimeoutSeconds) {
+        this(url, userName, userPass, minSize, maxSize, idleTimeoutMillis, acquireTimeoutMillis,
+                validationTimeoutSeconds, 32);
+    }
+
+    public ConnectionPool(String url, String userName, String userPass, int minSize, int maxSize,
+                          long idleTimeoutMillis, long acquireTimeoutMillis, int validationTimeoutSeconds,
+                          int statementCacheSize) {
+        if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min " + minSize + ", max " + maxSize);
+        }
+        this.url = url;
+        this.userName = userName;
+        this.userPass = userPass;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting at most the acquire timeout for one to become free.
+     * Idle connections are validated before being handed out; broken ones are discarded.
+     */
+    public PooledConnection borrow() throws SQLException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection");
+        }
+        if (!acquired) {
+            throw new SQLException("Timed out after " + acquireTimeoutMillis + " ms waiting for a connection");
+        }
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    return pooled;
+                }
+                discard(pooled);
+            }
+            return open();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool. Any open transaction is rolled back so the next
+     * borrower always starts from a clean, auto-committing connection, and the statements the borrower
+     * created outside the statement cache are closed.
+     */
+    public void release(PooledConnection pooled) {
+        if (pooled == null) {
+            return;
+        }
+        pooled.closeStatements();
+        try {
+            Connection con = pooled.getConnection();
+            if (con.isClosed()) {
+                discard(pooled);
+                return;
+            }
+            if (!con.getAutoCommit()) {
+                con.rollback();
+                con.setAutoCommit(true);
+            }
+            pooled.touch();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /** Opens connections until the pool holds at least its minimum size. */
+    public void prefill() {
+        while (total.get() < minSize) {
+            try {
+                idle.offerLast(open());
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    public void shutdown() {
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    public int getTotalConnections() {
+        return total.get();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public int getActiveConnections() {
+        return maxSize - permits.availablePermits();
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection con = DriverManager.getConnection(url, userName, userPass);
+        total.incrementAndGet();
+        return new PooledConnection(con, statementCacheSize);
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        try {
+            return pooled.getConnection().isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        total.decrementAndGet();
+        try {
+            pooled.getConnection().close();
+        } catch (SQLException e) {
+            // the connection is being thrown away, nothing else to do
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && total.get() > minSize) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.getLastUsed() < idleTimeoutMillis) {
+                // everything closer to the head was used more recently
+                break;
+            }
+            if (idle.removeLastOccurrence(pooled)) {
+                discard(pooled);
+            }
+        }
+        prefill();
+    }
+}
@@ -0,0 +1,136 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out unique ids from blocks leased from the IdSequences table (hi/lo allocation).
+ *
+ * Leasing a block advances the stored sequence by the block size in a single atomic UPDATE, so every
+ * process, and every restart of a process, gets a disjoint range. Within a block ids come from an
+ * in-memory counter and need no database round trip. Ids left in a block when the process stops are
+ * never reused, which only leaves gaps.
+ *
+ * An allocator for one of several shards turns every leased value n into n * shards + shard, so the shard
+ * an id belongs to is the id modulo the number of shards.
+ */
+public class IdAllocator {
+
+    private static final int blockSize = ConnectionManager.intSetting("IdBlockSize", 100);
+    private static final IdAllocator appointmentIds = new IdAllocator("Appointment", "Appointment", blockSize);
+
+    private final String sequenceName;
+    private final String seedTable;
+    private final int size;
+    // where the sequence is stored, null for the main database
+    private final ConnectionPool pool;
+    private final int shard;
+    private final int shards;
+    private volatile Block current = new Block(0, 0);
+
+    public IdAllocator(String sequenceName, String seedTable, int size) {
+        this(sequenceName, seedTable, size, null, 0, 1);
+    }
+
+    public IdAllocator(String sequenceName, String seedTable, int size, ConnectionPool pool, int shard, int shards) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Block size must be positive!");
+        }
+        if (shard < 0 || shard >= shards) {
+            throw new IllegalArgumentException("Invalid shard " + shard + " of " + shards);
+        }
+        this.sequenceName = sequenceName;
+        this.seedTable = seedTable;
+        this.size = size;
+        this.pool = pool;
+        this.shard = shard;
+        this.shards = shards;
+    }
+
+    public static IdAllocator appointmentIds() {
+        return appointmentIds;
+    }
+
+    // appointment ids of one shard, leased from the IdSequences table of the shard's database
+    public static IdAllocator appointmentIds(ConnectionPool pool, int shard, int shards) {
+        return new IdAllocator("Appointment", "Appointment", blockSize, pool, shard, shards);
+    }
+
+    /**
+     * Returns the next id. When the block is used up this leases the next one on a connection of its own, so
+     * call it before borrowing a connection: a caller that holds one while every other connection of the pool
+     * is borrowed too would wait for the acquire timeout, with every other caller waiting behind it.
+     */
+    public int next() throws SQLException {
+        while (true) {
+            Block block = current;
+            int id = block.next.getAndIncrement();
+            if (id < block.limit) {
+                if (shards == 1) {
+                    return id;
+                }
+                long sharded = (long) id * shards + shard;
+                if (sharded > Integer.MAX_VALUE) {
+                    throw new SQLException("Sequence " + sequenceName + " has run out of ids for shard " + shard);
+                }
+                return (int) sharded;
+            }
+            synchronized (this) {
+                // another thread may already have leased a fresh block
+                if (current == block) {
+                    current = lease();
+                }
+            }
+        }
+    }
+
+    private Block lease() throws SQLException {
+        ConnectionManager cm = new ConnectionManager(pool);
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+        try {
+            for (int attempt = 0; attempt < 2; attempt++) {
+                PreparedStatement statement = cm.prepareStatement(NamedStatement.LEASE_IDS);
+                statement.setInt(1, size);
+                statement.setString(2, sequenceName);
+                ResultSet resultSet = statement.executeQuery();
+                if (resultSet.next()) {
+                    int start = resultSet.getInt("NextValue");
+                    return new Block(start, start + size);
+                }
+                seed(con);
+            }
+            throw new SQLException("Could not lease ids for sequence " + sequenceName);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // creates the sequence row, starting after the largest id already in the seed table; this happens once per
+    // sequence, so the statement is not cached
+    private void seed(Connection con) {
+        String seedSequence = "INSERT INTO IdSequences (Name, NextValue) " +
+                "SELECT ?, ISNULL(MAX(id), 0) + 1 FROM " + seedTable;
+        try (PreparedStatement statement = con.prepareStatement(seedSequence)) {
+            statement.setString(1, sequenceName);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            // another process created the row first, which is fine
+        }
+    }
+
+    private static class Block {
+        private final AtomicInteger next;
+        private final int limit;
+
+        Block(int start, int limit) {
+            this.next = new AtomicInteger(start);
+            this.limit = limit;
+        }
+    }
+}
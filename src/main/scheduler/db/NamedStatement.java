@@ -0,0 +1,138 @@
+package scheduler.db;
+
+/**
+ * The fixed SQL statements of the scheduler. Preparing them through ConnectionManager.prepareStatement lets
+ * every pooled connection cache and reuse them.
+ */
+public enum NamedStatement {
+
+    // Patients
+    PATIENT_EXISTS("SELECT * FROM Patients WHERE Username = ?"),
+    ADD_PATIENT("INSERT INTO Patients VALUES (? , ?, ?)"),
+    GET_PATIENT("SELECT Salt, Hash FROM Patients WHERE Username = ?"),
+    GET_PATIENT_USERNAMES("SELECT Username FROM Patients"),
+
+    // Caregivers
+    CAREGIVER_EXISTS("SELECT * FROM Caregivers WHERE Username = ?"),
+    ADD_CAREGIVER("INSERT INTO Caregivers VALUES (? , ?, ?)"),
+    GET_CAREGIVER("SELECT Salt, Hash FROM Caregivers WHERE Username = ?"),
+    GET_CAREGIVER_USERNAMES("SELECT Username FROM Caregivers"),
+
+    // Availabilities
+    ADD_AVAILABILITY("INSERT INTO Availabilities VALUES (? , ?)"),
+    ADD_AVAILABILITY_IF_MISSING("INSERT INTO Availabilities (Time, Username) " +
+            "SELECT ?, Username FROM Caregivers WHERE Username = ? " +
+            "AND NOT EXISTS (SELECT 1 FROM Availabilities WHERE Time = ? AND Username = ?)"),
+    // a shard has no Caregivers table, the caregivers are checked on the main database first
+    ADD_SHARD_AVAILABILITY_IF_MISSING("INSERT INTO Availabilities (Time, Username) SELECT ?, ? " +
+            "WHERE NOT EXISTS (SELECT 1 FROM Availabilities WHERE Time = ? AND Username = ?)"),
+    GET_AVAILABILITIES_FROM("SELECT Time, Username FROM Availabilities WHERE Time >= ?"),
+    GET_AVAILABLE_CAREGIVERS("SELECT Username FROM Availabilities WHERE Time = ? ORDER BY Username"),
+    // every date in the range once with its caregiver count, plus up to ? of its first caregivers
+    SUMMARIZE_AVAILABILITY("SELECT Time, Username, Caregivers FROM (" +
+            "SELECT Time, Username, COUNT(*) OVER (PARTITION BY Time) AS Caregivers, " +
+            "ROW_NUMBER() OVER (PARTITION BY Time ORDER BY Username) AS Position " +
+            "FROM Availabilities WHERE Time >= ? AND Time <= ?) AS Ranked " +
+            "WHERE Position <= ? ORDER BY Time, Position"),
+    CLAIM_AVAILABILITY("WITH Slot AS (SELECT TOP (1) Time, Username FROM Availabilities " +
+            "WITH (UPDLOCK, ROWLOCK, READPAST) WHERE Time = ? ORDER BY Username) " +
+            "DELETE FROM Slot OUTPUT deleted.Username"),
+    CLAIM_CAREGIVER("DELETE FROM Availabilities WITH (ROWLOCK, READPAST) OUTPUT deleted.Username " +
+            "WHERE Time = ? AND Username = ?"),
+    // claims up to ? free rows for the date at once, for a batch of reservations
+    CLAIM_AVAILABILITIES("WITH Slots AS (SELECT TOP (?) Time, Username FROM Availabilities " +
+            "WITH (UPDLOCK, ROWLOCK, READPAST) WHERE Time = ? ORDER BY Username) " +
+            "DELETE FROM Slots OUTPUT deleted.Username"),
+    REMOVE_AVAILABILITY("DELETE FROM Availabilities WHERE Time = ? AND Username = ?"),
+
+    // Vaccines
+    ADD_VACCINE("INSERT INTO Vaccines (Name, Doses) VALUES (?, ?)"),
+    GET_VACCINE("SELECT Name, Doses FROM Vaccines WHERE Name = ?"),
+    GET_VACCINES("SELECT Name, Doses FROM Vaccines"),
+    GET_VACCINE_VERSION("SELECT Name, Doses, Version FROM Vaccines WHERE Name = ?"),
+    LOCK_VACCINE("SELECT Name, Doses, Version FROM Vaccines WITH (UPDLOCK, ROWLOCK) WHERE Name = ?"),
+    // compare-and-set on the Version read before
+    SET_DOSES("UPDATE Vaccines SET Doses = ?, Version = Version + 1 WHERE Name = ? AND Version = ?"),
+    VACCINE_EXISTS("SELECT Name FROM Vaccines WHERE Name = ?"),
+    INCREASE_DOSES("UPDATE Vaccines SET Doses = Doses + ?, Version = Version + 1 OUTPUT inserted.Doses WHERE Name = ?"),
+    DECREASE_DOSES("UPDATE Vaccines SET Doses = Doses - ?, Version = Version + 1 OUTPUT inserted.Doses WHERE Name = ? AND Doses >= ?"),
+    TAKE_DOSE("UPDATE Vaccines SET Doses = Doses - 1, Version = Version + 1 OUTPUT inserted.Name WHERE Name = ? AND Doses > 0"),
+    // takes up to ? doses, as many as are left, and returns how many were taken
+    TAKE_DOSES("UPDATE Vaccines SET Doses = Doses - (CASE WHEN Doses < ? THEN Doses ELSE ? END), " +
+            "Version = Version + 1 " +
+            "OUTPUT inserted.Name, deleted.Doses - inserted.Doses AS Taken WHERE Name = ? AND Doses > 0"),
+    ADJUST_DOSES("UPDATE Vaccines SET Doses = Doses + ?, Version = Version + 1 WHERE Name = ?"),
+    UPSERT_DOSES("MERGE Vaccines WITH (HOLDLOCK) AS target " +
+            "USING (VALUES (?, ?)) AS source (Name, Doses) ON target.Name = source.Name " +
+            "WHEN MATCHED THEN UPDATE SET Doses = target.Doses + source.Doses, Version = target.Version + 1 " +
+            "WHEN NOT MATCHED THEN INSERT (Name, Doses) VALUES (source.Name, source.Doses);"),
+
+    // Appointment
+    ADD_APPOINTMENT("INSERT INTO Appointment (id, PName, CName, VName, Time) VALUES (?, ?, ?, ?, ?)"),
+    GET_APPOINTMENT("SELECT id, PName, CName, VName, Time, Version FROM Appointment WHERE id = ?"),
+    LOCK_APPOINTMENT("SELECT Version FROM Appointment WITH (UPDLOCK, ROWLOCK) WHERE id = ?"),
+    REMOVE_APPOINTMENT("DELETE FROM Appointment WHERE id = ?"),
+    REMOVE_APPOINTMENT_VERSION("DELETE FROM Appointment WHERE id = ? AND Version = ?"),
+    GET_PATIENT_APPOINTMENTS("SELECT TOP (?) id, PName, CName, VName, Time, Version FROM Appointment " +
+            "WHERE PName = ? AND Time >= ? AND Time <= ? AND (Time > ? OR id > ?) ORDER BY Time, id"),
+    // one batch: the selected appointments are deleted into a table variable, which then gives back doses and
+    // caregivers with one statement each; the rows are returned once the transaction committed
+    CANCEL_APPOINTMENTS(Bulk.START + Bulk.REFUND + Bulk.END),
+    // the same without giving back doses, for recalls and for shards, whose doses are on the main database
+    CANCEL_APPOINTMENTS_KEEP_DOSES(Bulk.START + Bulk.END),
+    GET_CAREGIVER_APPOINTMENTS("SELECT TOP (?) id, PName, CName, VName, Time, Version FROM Appointment " +
+            "WHERE CName = ? AND Time >= ? AND Time <= ? AND (Time > ? OR id > ?) ORDER BY Time, id"),
+
+    // Ids
+    LEASE_IDS("UPDATE IdSequences SET NextValue = NextValue + ? OUTPUT deleted.NextValue WHERE Name = ?"),
+
+    // Journal
+    GET_JOURNAL_CHECKPOINT("SELECT Sequence FROM JournalCheckpoints WHERE Name = ?"),
+    SAVE_JOURNAL_CHECKPOINT("MERGE JournalCheckpoints WITH (HOLDLOCK) AS target " +
+            "USING (VALUES (?, ?)) AS source (Name, Sequence) ON target.Name = source.Name " +
+            "WHEN MATCHED THEN UPDATE SET Sequence = source.Sequence " +
+            "WHEN NOT MATCHED THEN INSERT (Name, Sequence) VALUES (source.Name, source.Sequence);"),
+
+    // Replicas
+    BEAT_HEARTBEAT("MERGE ReplicationHeartbeat WITH (HOLDLOCK) AS target " +
+            "USING (VALUES (?)) AS source (Name) ON target.Name = source.Name " +
+            "WHEN MATCHED THEN UPDATE SET Beat = SYSUTCDATETIME() " +
+            "WHEN NOT MATCHED THEN INSERT (Name, Beat) VALUES (source.Name, SYSUTCDATETIME()) " +
+            "OUTPUT inserted.Beat;"),
+    GET_HEARTBEAT("SELECT Beat FROM ReplicationHeartbeat WHERE Name = ?");
+
+    private final String sql;
+
+    NamedStatement(String sql) {
+        this.sql = sql;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    // the parts of the bulk cancellation batches
+    private static class Bulk {
+        private static final String START = "SET NOCOUNT ON; SET XACT_ABORT ON; " +
+                "DECLARE @from date = ?, @to date = ?, @caregiver varchar(255) = ?, @vaccine varchar(255) = ?, " +
+                "@release bit = ?, @withdraw bit = ?; " +
+                "DECLARE @cancelled TABLE (id int PRIMARY KEY, PName varchar(255), CName varchar(255), " +
+                "VName varchar(255), Time date); " +
+                "BEGIN TRANSACTION; " +
+                "DELETE FROM Appointment " +
+                "OUTPUT deleted.id, deleted.PName, deleted.CName, deleted.VName, deleted.Time INTO @cancelled " +
+                "WHERE Time >= @from AND Time <= @to AND (@caregiver IS NULL OR CName = @caregiver) " +
+                "AND (@vaccine IS NULL OR VName = @vaccine) OPTION (RECOMPILE); ";
+        private static final String REFUND = "UPDATE v SET Doses = v.Doses + c.Cancelled, Version = v.Version + 1 " +
+                "FROM Vaccines AS v JOIN (SELECT VName, COUNT(*) AS Cancelled FROM @cancelled GROUP BY VName) AS c " +
+                "ON v.Name = c.VName; ";
+        private static final String END = "INSERT INTO Availabilities (Time, Username) " +
+                "SELECT DISTINCT c.Time, c.CName FROM @cancelled AS c WHERE @release = 1 AND NOT EXISTS " +
+                "(SELECT * FROM Availabilities AS a WITH (UPDLOCK, HOLDLOCK) " +
+                "WHERE a.Time = c.Time AND a.Username = c.CName); " +
+                "DELETE FROM Availabilities WHERE @withdraw = 1 AND Username = @caregiver " +
+                "AND Time >= @from AND Time <= @to; " +
+                "COMMIT TRANSACTION; " +
+                "SELECT id, PName, CName, VName, Time FROM @cancelled ORDER BY PName, Time, id;";
+    }
+}
@@ -0,0 +1,72 @@
+package scheduler.db;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A physical connection owned by a ConnectionPool, together with the bookkeeping the pool needs.
+ *
+ * Borrowers get a view of the connection that remembers every statement they create on it directly, instead
+ * of through the statement cache. Those statements would otherwise live as long as the pooled connection, so
+ * the pool closes them when the connection is released; the cached statements stay open.
+ */
+public class PooledConnection {
+    private final Connection connection;
+    private final Connection view;
+    private final StatementCache statements;
+    // statements created on the view since the connection was borrowed
+    private final List<Statement> opened = new ArrayList<>();
+    private volatile long lastUsed;
+
+    PooledConnection(Connection connection, int statementCacheSize) {
+        this.connection = connection;
+        this.view = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (result instanceof Statement) {
+                        opened.add((Statement) result);
+                    }
+                    return result;
+                });
+        this.statements = new StatementCache(connection, statementCacheSize);
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    public Connection getConnection() {
+        return view;
+    }
+
+    public StatementCache getStatements() {
+        return statements;
+    }
+
+    // closes the statements the borrower created outside the statement cache
+    void closeStatements() {
+        for (Statement statement : opened) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // the statement is being thrown away, nothing else to do
+            }
+        }
+        opened.clear();
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    void touch() {
+        lastUsed = System.currentTimeMillis();
+    }
+}
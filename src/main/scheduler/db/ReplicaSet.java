@@ -0,0 +1,213 @@
+package scheduler.db;
+
+import scheduler.repository.Repositories;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read replicas of the main database, for reads that may be slightly out of date.
+ *
+ * Replicas are off unless the Replicas environment variable is set; replica i is the database at the JDBC
+ * URL in Replica{i}Url, counting from 0, with the same credentials as the primary. Reads marked as such with
+ * ConnectionManager.forReads() are spread round robin over the replicas whose lag is at most
+ * MaxReplicaLagMillis (5000), and go to the primary when there is none.
+ *
+ * The lag is measured every ReplicaCheckMillis (1000) with a heartbeat row: the primary's clock stamps it,
+ * and each replica reports the stamp it has replicated so far, so the difference needs no synchronized
+ * clocks. Remembering when this process wrote each stamp also tells up to when a replica holds everything
+ * this process committed. A thread that has to see its own writes (read-your-writes) sets the time of its
+ * last write with readAfter, and only replicas that are at least that far along serve it.
+ */
+public class ReplicaSet {
+
+    private static final String HEARTBEAT = "primary";
+    // stamps remembered to tell how far along the replicas are, enough for a minute of checks at 1 per second
+    private static final int REMEMBERED_BEATS = 64;
+
+    private static final ReplicaSet instance = create();
+
+    private static final ThreadLocal<Long> readAfter = ThreadLocal.withInitial(() -> 0L);
+
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    // the heartbeat stamps this process wrote and the System.nanoTime() just before it wrote each
+    private final TreeMap<Timestamp, Long> beats = new TreeMap<>();
+    private volatile Timestamp lastBeat = null;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong primaryReads = new AtomicLong();
+
+    private ReplicaSet(List<Replica> replicas, long maxLagMillis, long checkMillis) {
+        this.replicas = replicas;
+        this.maxLagMillis = maxLagMillis;
+        ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "replica-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        monitor.scheduleWithFixedDelay(this::check, 0, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static ReplicaSet create() {
+        int count = ConnectionManager.intSetting("Replicas", 0);
+        if (count <= 0 || Repositories.isInMemory()) {
+            return null;
+        }
+        List<Replica> replicas = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String url = System.getenv("Replica" + i + "Url");
+            if (url == null || url.isEmpty()) {
+                System.out.println("Replica" + i + "Url is not set, ignoring replica " + i);
+                continue;
+            }
+            replicas.add(new Replica(i, ConnectionManager.createPool(url)));
+        }
+        if (replicas.isEmpty()) {
+            return null;
+        }
+        return new ReplicaSet(replicas, ConnectionManager.intSetting("MaxReplicaLagMillis", 5000),
+                Math.max(100, ConnectionManager.intSetting("ReplicaCheckMillis", 1000)));
+    }
+
+    // returns null when there are no replicas
+    public static ReplicaSet getInstance() {
+        return instance;
+    }
+
+    /**
+     * Reads on this thread from now on have to see everything this process committed before the given
+     * System.nanoTime(), 0 if they need not. Replicas are picked accordingly until the next call.
+     */
+    public static void readAfter(long nanoTime) {
+        readAfter.set(nanoTime);
+    }
+
+    // the pool of a replica that is recent enough for this thread's reads, or null for the primary
+    ConnectionPool choose() {
+        long after = readAfter.get();
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.lagMillis <= maxLagMillis && (after == 0 || isCaughtUp(replica, after))) {
+                replicaReads.incrementAndGet();
+                return replica.pool;
+            }
+        }
+        primaryReads.incrementAndGet();
+        return null;
+    }
+
+    private static boolean isCaughtUp(Replica replica, long after) {
+        Long caughtUpAt = replica.caughtUpAt;
+        return caughtUpAt != null && caughtUpAt - after >= 0;
+    }
+
+    private void check() {
+        try {
+            beat();
+        } catch (SQLException e) {
+            // without a fresh stamp on the primary no lag can be measured, keep reading from the primary
+            for (Replica replica : replicas) {
+                replica.lagMillis = Long.MAX_VALUE;
+            }
+            return;
+        }
+        for (Replica replica : replicas) {
+            try {
+                measure(replica);
+            } catch (SQLException e) {
+                replica.lagMillis = Long.MAX_VALUE;
+            }
+        }
+    }
+
+    private void beat() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        if (cm.createConnection() == null) {
+            throw new SQLException("No database connection available");
+        }
+        try {
+            // whatever was committed before the stamp was written is on every replica that has the stamp
+            long before = System.nanoTime();
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.BEAT_HEARTBEAT);
+            statement.setString(1, HEARTBEAT);
+            ResultSet resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                throw new SQLException("The heartbeat was not written");
+            }
+            Timestamp beat = resultSet.getTimestamp("Beat");
+            synchronized (beats) {
+                beats.put(beat, before);
+                while (beats.size() > REMEMBERED_BEATS) {
+                    beats.pollFirstEntry();
+                }
+            }
+            lastBeat = beat;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    private void measure(Replica replica) throws SQLException {
+        ConnectionManager cm = new ConnectionManager(replica.pool);
+        if (cm.createConnection() == null) {
+            throw new SQLException("No connection to replica " + replica.number);
+        }
+        try {
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.GET_HEARTBEAT);
+            statement.setString(1, HEARTBEAT);
+            ResultSet resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                throw new SQLException("Replica " + replica.number + " has no heartbeat yet");
+            }
+            Timestamp beat = resultSet.getTimestamp("Beat");
+            replica.lagMillis = Math.max(0, lastBeat.getTime() - beat.getTime());
+            // other processes stamp the row too, the latest of our stamps at or before it is the safe bound
+            synchronized (beats) {
+                Map.Entry<Timestamp, Long> ours = beats.floorEntry(beat);
+                if (ours != null) {
+                    replica.caughtUpAt = ours.getValue();
+                }
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    public String describe() {
+        StringBuilder lags = new StringBuilder();
+        for (Replica replica : replicas) {
+            lags.append(lags.length() == 0 ? "" : ", ")
+                    .append(replica.lagMillis == Long.MAX_VALUE ? "unknown" : replica.lagMillis + " ms");
+        }
+        return String.format("replicas: %d (lag %s, max %d ms), %d reads on replicas, %d on the primary",
+                replicas.size(), lags, maxLagMillis, replicaReads.get(), primaryReads.get());
+    }
+
+    private static class Replica {
+        private final int number;
+        private final ConnectionPool pool;
+        // unknown until the first check
+        private volatile long lagMillis = Long.MAX_VALUE;
+        // the System.nanoTime() up to which the replica holds everything this process committed, null if unknown
+        private volatile Long caughtUpAt = null;
+
+        private Replica(int number, ConnectionPool pool) {
+            this.number = number;
+            this.pool = pool;
+        }
+    }
+}
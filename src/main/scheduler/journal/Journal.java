@@ -0,0 +1,405 @@
+package scheduler.journal;
+
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.VaccineCache;
+import scheduler.db.ConnectionManager;
+import scheduler.db.IdAllocator;
+import scheduler.db.NamedStatement;
+import scheduler.metrics.Metrics;
+import scheduler.model.Appointment;
+import scheduler.repository.Repositories;
+import scheduler.reservation.Reservation;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A write-ahead journal of reservations and cancellations on a memory-mapped file, so reserve and cancel can
+ * be acknowledged as soon as their record is on disk instead of after several database round trips.
+ *
+ * The journal is off unless the Journal environment variable names its file (JournalSizeMB, 64 by default,
+ * sets its size). While it is on:
+ * - reserve claims a caregiver in the availability index and a dose in the journal's own dose ledger, both
+ *   in memory, then appends a RESERVE record; cancel appends a CANCEL record and gives both back.
+ * - records are made durable with group commit: one thread forces the mapped file while the others wait, and
+ *   every record appended before the force is covered by it.
+ * - the JournalApplier drains durable records to the database in batches, one transaction per batch. The
+ *   transaction also stores the sequence number of the last applied record in JournalCheckpoints, so every
+ *   record is applied exactly once, also when the process dies between a commit and the next batch.
+ * - at startup every record after the stored checkpoint is replayed before anything else reads the database.
+ *
+ * Because the in-memory index and ledger decide the bookings, the process has to be the only one writing
+ * availability, doses and appointments to the database, and the availability index must be on. Appointments
+ * show up in show_appointments once they have been applied, normally within a few milliseconds.
+ */
+public class Journal {
+
+    private static final int MAGIC = 0x56534A31;
+    private static final int VERSION = 1;
+    // magic (int), version (int), sequence of the last applied record (long), then the records
+    private static final int APPLIED_OFFSET = 8;
+    static final int HEADER_SIZE = 64;
+
+    private static final Journal instance = open();
+
+    private final String name;
+    private final MappedByteBuffer buffer;
+    private final AvailabilityIndex index;
+    private final IdAllocator ids = IdAllocator.appointmentIds();
+
+    // doses per vaccine after every acknowledged record; decides whether a reservation can take a dose
+    private final ConcurrentNavigableMap<String, Integer> doses =
+            new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+    // reservations acknowledged but not applied yet, and appointments with a cancellation not applied yet
+    private final Map<Integer, Appointment> unappliedReservations = new ConcurrentHashMap<>();
+    private final Set<Integer> unappliedCancellations = ConcurrentHashMap.newKeySet();
+
+    // appends are serialized; writePosition is only touched while holding appendLock
+    private final Object appendLock = new Object();
+    private int writePosition = HEADER_SIZE;
+    private volatile long lastSequence;
+
+    // one force at a time, every waiting appender is covered by the next one
+    private final Object syncLock = new Object();
+    private volatile long durableSequence;
+
+    // signalled whenever records become durable or get applied
+    private final Object progress = new Object();
+    private volatile long appliedSequence;
+
+    private final AtomicLong syncs = new AtomicLong();
+
+    private Journal(Path path, int sizeMB, AvailabilityIndex index) throws IOException, SQLException {
+        this.name = path.getFileName().toString();
+        this.index = index;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            long size = Math.max(file.length(), Math.max(1, sizeMB) * 1024L * 1024L);
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("The journal can be at most 2 GB");
+            }
+            file.setLength(size);
+            // the mapping stays valid after the file is closed
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        int magic = buffer.getInt(0);
+        if (magic == 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(APPLIED_OFFSET, 0);
+            buffer.putInt(HEADER_SIZE, JournalRecord.END);
+            buffer.force();
+        } else if (magic != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException(path + " is not a reservation journal");
+        }
+
+        long checkpoint = replay();
+        // the journal is empty once replayed, new records start at the front again
+        lastSequence = checkpoint;
+        durableSequence = checkpoint;
+        appliedSequence = checkpoint;
+        buffer.putLong(APPLIED_OFFSET, checkpoint);
+        buffer.putInt(HEADER_SIZE, JournalRecord.END);
+        buffer.force();
+
+        // with everything applied, the database holds the state the journal continues from
+        doses.putAll(Repositories.vaccines().findAll());
+        index.reload();
+
+        Thread applier = new Thread(new JournalApplier(this, checkpoint,
+                ConnectionManager.intSetting("JournalBatchSize", 500)), "journal-applier");
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    private static Journal open() {
+        String setting = System.getenv("Journal");
+        if (setting == null || setting.isEmpty()) {
+            return null;
+        }
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        if (Repositories.isInMemory() || index == null) {
+            System.out.println("The journal needs the unsharded database backend and the availability index, " +
+                    "ignoring Journal");
+            return null;
+        }
+        try {
+            return new Journal(Paths.get(setting), ConnectionManager.intSetting("JournalSizeMB", 64), index);
+        } catch (IOException | SQLException e) {
+            // running without the journal would skip the records that were not applied yet
+            throw new IllegalStateException("Cannot open the journal " + setting, e);
+        }
+    }
+
+    // returns null when the journal is disabled; the first call opens the journal and replays it
+    public static Journal getInstance() {
+        return instance;
+    }
+
+    public Reservation reserve(String patient, Date date, String vaccine) throws SQLException {
+        String caregiver = index.claimFirst(date);
+        if (caregiver == null) {
+            return Reservation.rejected(Reservation.Status.NO_CAREGIVER);
+        }
+        String vaccineName = doses.ceilingKey(vaccine);
+        if (vaccineName == null || !vaccineName.equalsIgnoreCase(vaccine)) {
+            index.add(date, caregiver);
+            return Reservation.rejected(Reservation.Status.UNKNOWN_VACCINE);
+        }
+        if (!takeDoses(vaccineName, 1)) {
+            index.add(date, caregiver);
+            return Reservation.rejected(Reservation.Status.NO_DOSES);
+        }
+
+        int id;
+        try {
+            id = ids.next();
+        } catch (SQLException e) {
+            dosesAdded(vaccineName, 1);
+            index.add(date, caregiver);
+            throw e;
+        }
+        Appointment appointment = new Appointment(id, patient, caregiver, vaccineName, date);
+        unappliedReservations.put(id, appointment);
+        long sequence;
+        try {
+            sequence = append(JournalRecord.Type.RESERVE, appointment);
+        } catch (InterruptedException e) {
+            unappliedReservations.remove(id);
+            dosesAdded(vaccineName, 1);
+            index.add(date, caregiver);
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for room in the journal");
+        }
+        sync(sequence);
+        return Reservation.confirmed(appointment.getId(), caregiver);
+    }
+
+    // an acknowledged reservation that is not in the database yet, or null
+    public Appointment getUnapplied(int id) {
+        return unappliedReservations.get(id);
+    }
+
+    // whether the appointment has an acknowledged cancellation that is not in the database yet
+    public boolean isCancelled(int id) {
+        return unappliedCancellations.contains(id);
+    }
+
+    public boolean cancel(Appointment appointment) throws SQLException {
+        int id = appointment.getId();
+        // only one cancellation of an appointment can be on its way to the database
+        if (!unappliedCancellations.add(id)) {
+            return false;
+        }
+        try {
+            // a cancellation applied after the caller looked the appointment up has removed it already
+            if (!unappliedReservations.containsKey(id) && !exists(id)) {
+                unappliedCancellations.remove(id);
+                return false;
+            }
+            sync(append(JournalRecord.Type.CANCEL, appointment));
+        } catch (SQLException e) {
+            unappliedCancellations.remove(id);
+            throw e;
+        } catch (InterruptedException e) {
+            unappliedCancellations.remove(id);
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for room in the journal");
+        }
+        dosesAdded(appointment.getVaccineName(), 1);
+        index.add(appointment.getTime(), appointment.getCaregiver());
+        return true;
+    }
+
+    // called after doses were added to the database outside the journal, e.g. by add_doses
+    public void dosesAdded(String vaccineName, int num) {
+        doses.merge(vaccineName, num, Integer::sum);
+    }
+
+    // takes doses out of the ledger before they are taken out of the database outside the journal
+    public boolean takeDoses(String vaccineName, int num) {
+        boolean[] taken = {false};
+        doses.computeIfPresent(vaccineName, (name, left) -> {
+            if (left < num) {
+                return left;
+            }
+            taken[0] = true;
+            return left - num;
+        });
+        return taken[0];
+    }
+
+    public String describe() {
+        return "journal: " + (lastSequence - appliedSequence) + " records not applied, " + syncs.get() +
+                " syncs up to sequence " + durableSequence;
+    }
+
+    private boolean exists(int id) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+        try {
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.GET_APPOINTMENT);
+            statement.setInt(1, id);
+            return statement.executeQuery().next();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    /**
+     * Appends a record and returns its sequence number. The record is not durable until sync returns for it.
+     * When the record does not fit in the rest of the file, the writer waits for the applier to catch up and
+     * continues at the front.
+     */
+    private long append(JournalRecord.Type type, Appointment appointment) throws InterruptedException {
+        synchronized (appendLock) {
+            long sequence = lastSequence + 1;
+            byte[] record = new JournalRecord(sequence, type, appointment).encode();
+            // the record and the end marker behind it have to fit
+            if (writePosition + record.length + 4 > buffer.capacity()) {
+                buffer.putInt(writePosition, JournalRecord.WRAP);
+                sync(lastSequence);
+                awaitApplied(lastSequence);
+                writePosition = HEADER_SIZE;
+            }
+            ByteBuffer view = buffer.duplicate();
+            view.position(writePosition);
+            view.put(record);
+            view.putInt(JournalRecord.END);
+            writePosition += record.length;
+            lastSequence = sequence;
+            return sequence;
+        }
+    }
+
+    // returns once the record with the sequence number is on disk (group commit)
+    private void sync(long sequence) {
+        if (durableSequence >= sequence) {
+            return;
+        }
+        synchronized (syncLock) {
+            // the force of another thread may have covered this record while this one waited
+            if (durableSequence >= sequence) {
+                return;
+            }
+            long target = lastSequence;
+            long start = System.nanoTime();
+            buffer.force();
+            Metrics.journalSync().record(System.nanoTime() - start);
+            syncs.incrementAndGet();
+            durableSequence = target;
+        }
+        synchronized (progress) {
+            progress.notifyAll();
+        }
+    }
+
+    private void awaitApplied(long sequence) throws InterruptedException {
+        synchronized (progress) {
+            while (appliedSequence < sequence) {
+                progress.wait();
+            }
+        }
+    }
+
+    // blocks until there are durable records the applier has not applied yet, returns the last of them
+    long awaitDurable() throws InterruptedException {
+        synchronized (progress) {
+            while (durableSequence <= appliedSequence) {
+                progress.wait();
+            }
+            return durableSequence;
+        }
+    }
+
+    // reading starts at the header, the applier only reads records that are durable and not applied
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    // the records are in the database: reads go there from now on, and the cached doses follow
+    void applied(List<JournalRecord> records) {
+        for (JournalRecord record : records) {
+            Appointment appointment = record.getAppointment();
+            if (record.getType() == JournalRecord.Type.RESERVE) {
+                unappliedReservations.remove(appointment.getId());
+                VaccineCache.getInstance().adjust(appointment.getVaccineName(), -1);
+            } else {
+                unappliedCancellations.remove(appointment.getId());
+                VaccineCache.getInstance().adjust(appointment.getVaccineName(), 1);
+            }
+        }
+        long sequence = records.get(records.size() - 1).getSequence();
+        buffer.putLong(APPLIED_OFFSET, sequence);
+        synchronized (progress) {
+            appliedSequence = sequence;
+            progress.notifyAll();
+        }
+    }
+
+    /**
+     * Applies every record after the checkpoint stored in the database, and returns the sequence number the
+     * journal continues from.
+     */
+    private long replay() throws SQLException {
+        long checkpoint = JournalApplier.checkpoint(name);
+        List<JournalRecord> records = scan(buffer);
+        List<JournalRecord> unapplied = new ArrayList<>();
+        for (JournalRecord record : records) {
+            if (record.getSequence() > checkpoint) {
+                unapplied.add(record);
+            }
+        }
+        if (!unapplied.isEmpty()) {
+            JournalApplier.apply(name, unapplied);
+            System.out.println("Replayed " + unapplied.size() + " journal records");
+        }
+        long last = records.isEmpty() ? 0 : records.get(records.size() - 1).getSequence();
+        return Math.max(checkpoint, last);
+    }
+
+    /**
+     * Reads the records from the front of the journal up to the first end marker, wrap marker, torn record or
+     * break in the sequence numbers; whatever follows was written before the last wrap.
+     */
+    static List<JournalRecord> scan(ByteBuffer buffer) {
+        List<JournalRecord> records = new ArrayList<>();
+        int position = HEADER_SIZE;
+        while (true) {
+            JournalRecord record = JournalRecord.read(buffer, position);
+            if (record == null || (!records.isEmpty() &&
+                    record.getSequence() != records.get(records.size() - 1).getSequence() + 1)) {
+                return records;
+            }
+            records.add(record);
+            position += JournalRecord.size(buffer, position);
+        }
+    }
+
+    static long appliedSequence(ByteBuffer buffer) {
+        return buffer.getLong(APPLIED_OFFSET);
+    }
+
+    static boolean isJournal(ByteBuffer buffer) {
+        return buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION;
+    }
+}
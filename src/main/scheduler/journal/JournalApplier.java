@@ -0,0 +1,181 @@
+package scheduler.journal;
+
+import scheduler.db.ConnectionManager;
+import scheduler.db.NamedStatement;
+import scheduler.model.Appointment;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drains durable journal records to the database.
+ *
+ * Every batch is applied in one transaction together with the sequence number of its last record, so a batch
+ * is either applied and checkpointed or neither. Consecutive records of the same type are sent as JDBC
+ * batches, which makes a batch of reservations three round trips however many records it holds. If a batch
+ * fails it is rolled back and retried after a second.
+ */
+public class JournalApplier implements Runnable {
+
+    private static final long RETRY_MILLIS = 1000;
+
+    private final Journal journal;
+    private final int batchSize;
+    private int readPosition = Journal.HEADER_SIZE;
+    private long readSequence;
+
+    // starts reading right behind the given sequence number, the last one applied when the journal was opened
+    JournalApplier(Journal journal, long sequence, int batchSize) {
+        this.journal = journal;
+        this.readSequence = sequence;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                long durable = journal.awaitDurable();
+                int position = readPosition;
+                List<JournalRecord> batch = new ArrayList<>();
+                ByteBuffer buffer = journal.getBuffer();
+                while (batch.size() < batchSize && readSequence + batch.size() < durable) {
+                    if (buffer.getInt(position) == JournalRecord.WRAP) {
+                        position = Journal.HEADER_SIZE;
+                        continue;
+                    }
+                    JournalRecord record = JournalRecord.read(buffer, position);
+                    if (record == null) {
+                        throw new IllegalStateException("Corrupt journal record at position " + position);
+                    }
+                    batch.add(record);
+                    position += JournalRecord.size(buffer, position);
+                }
+                apply(journal.getName(), batch);
+                readPosition = position;
+                readSequence = batch.get(batch.size() - 1).getSequence();
+                journal.applied(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (SQLException e) {
+                e.printStackTrace();
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // the sequence number of the last record applied from the named journal, 0 if none was
+    static long checkpoint(String name) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+        try {
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.GET_JOURNAL_CHECKPOINT);
+            statement.setString(1, name);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? resultSet.getLong("Sequence") : 0;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // applies the records in order and checkpoints the last one, all in one transaction
+    static void apply(String name, List<JournalRecord> records) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+        try {
+            con.setAutoCommit(false);
+            int start = 0;
+            while (start < records.size()) {
+                JournalRecord.Type type = records.get(start).getType();
+                int end = start;
+                while (end < records.size() && records.get(end).getType() == type) {
+                    end++;
+                }
+                if (type == JournalRecord.Type.RESERVE) {
+                    reserveAll(cm, records.subList(start, end));
+                } else {
+                    cancelAll(cm, records.subList(start, end));
+                }
+                start = end;
+            }
+            PreparedStatement checkpoint = cm.prepareStatement(NamedStatement.SAVE_JOURNAL_CHECKPOINT);
+            checkpoint.setString(1, name);
+            checkpoint.setLong(2, records.get(records.size() - 1).getSequence());
+            checkpoint.executeUpdate();
+            con.commit();
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // the caregiver and the dose were claimed when the reservation was acknowledged, so nothing here can refuse
+    private static void reserveAll(ConnectionManager cm, List<JournalRecord> records) throws SQLException {
+        PreparedStatement claim = cm.prepareStatement(NamedStatement.REMOVE_AVAILABILITY);
+        PreparedStatement take = cm.prepareStatement(NamedStatement.ADJUST_DOSES);
+        PreparedStatement add = cm.prepareStatement(NamedStatement.ADD_APPOINTMENT);
+        for (JournalRecord record : records) {
+            Appointment appointment = record.getAppointment();
+            claim.setDate(1, appointment.getTime());
+            claim.setString(2, appointment.getCaregiver());
+            claim.addBatch();
+            take.setInt(1, -1);
+            take.setString(2, appointment.getVaccineName());
+            take.addBatch();
+            add.setInt(1, appointment.getId());
+            add.setString(2, appointment.getPatient());
+            add.setString(3, appointment.getCaregiver());
+            add.setString(4, appointment.getVaccineName());
+            add.setDate(5, appointment.getTime());
+            add.addBatch();
+        }
+        claim.executeBatch();
+        take.executeBatch();
+        add.executeBatch();
+    }
+
+    // only appointments that were actually removed give their dose and caregiver back
+    private static void cancelAll(ConnectionManager cm, List<JournalRecord> records) throws SQLException {
+        PreparedStatement remove = cm.prepareStatement(NamedStatement.REMOVE_APPOINTMENT);
+        for (JournalRecord record : records) {
+            remove.setInt(1, record.getAppointment().getId());
+            remove.addBatch();
+        }
+        int[] removed = remove.executeBatch();
+
+        PreparedStatement refund = cm.prepareStatement(NamedStatement.ADJUST_DOSES);
+        PreparedStatement release = cm.prepareStatement(NamedStatement.ADD_AVAILABILITY);
+        boolean any = false;
+        for (int i = 0; i < records.size(); i++) {
+            if (removed[i] == 0) {
+                continue;
+            }
+            Appointment appointment = records.get(i).getAppointment();
+            refund.setInt(1, 1);
+            refund.setString(2, appointment.getVaccineName());
+            refund.addBatch();
+            release.setDate(1, appointment.getTime());
+            release.setString(2, appointment.getCaregiver());
+            release.addBatch();
+            any = true;
+        }
+        if (any) {
+            refund.executeBatch();
+            release.executeBatch();
+        }
+    }
+}
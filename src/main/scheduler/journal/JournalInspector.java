@@ -0,0 +1,125 @@
+package scheduler.journal;
+
+import scheduler.model.Appointment;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Prints and verifies a reservation journal without opening it for writing, e.g. to look at the records a
+ * crashed process left behind before restarting it.
+ *
+ * The summary tells how many records the journal holds, how many of them were not applied to the database
+ * when the header was last written, and why reading stopped. Verification checks that no appointment id is
+ * reserved twice, no appointment is cancelled twice, and no caregiver is booked twice on a date without a
+ * cancellation in between. The exit status is 1 if the file is not a journal or verification fails.
+ *
+ * Usage: java scheduler.journal.JournalInspector <journal file> [--records]
+ */
+public class JournalInspector {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2 || (args.length == 2 && !args[1].equals("--records"))) {
+            System.out.println("Usage: JournalInspector <journal file> [--records]");
+            System.exit(1);
+        }
+        ByteBuffer buffer;
+        try (RandomAccessFile file = new RandomAccessFile(args[0], "r")) {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        if (buffer.capacity() < Journal.HEADER_SIZE || !Journal.isJournal(buffer)) {
+            System.out.println(args[0] + " is not a reservation journal");
+            System.exit(1);
+        }
+
+        long applied = Journal.appliedSequence(buffer);
+        List<JournalRecord> records = Journal.scan(buffer);
+        int reserves = 0;
+        int unapplied = 0;
+        int end = Journal.HEADER_SIZE;
+        for (JournalRecord record : records) {
+            if (args.length == 2) {
+                System.out.println(record);
+            }
+            if (record.getType() == JournalRecord.Type.RESERVE) {
+                reserves++;
+            }
+            if (record.getSequence() > applied) {
+                unapplied++;
+            }
+            end += JournalRecord.size(buffer, end);
+        }
+
+        System.out.println("File: " + args[0] + " (" + buffer.capacity() + " bytes)");
+        if (records.isEmpty()) {
+            System.out.println("Records: none");
+        } else {
+            System.out.println("Records: " + records.size() + " (" + reserves + " reserve, " +
+                    (records.size() - reserves) + " cancel), sequence " + records.get(0).getSequence() + " to " +
+                    records.get(records.size() - 1).getSequence());
+        }
+        System.out.println("Applied up to sequence " + applied + ", " + unapplied + " records after it");
+        System.out.println("Reading stopped at position " + end + ": " + stopReason(buffer, end));
+
+        List<String> problems = verify(records);
+        for (String problem : problems) {
+            System.out.println("Problem: " + problem);
+        }
+        System.out.println(problems.isEmpty() ? "Verification passed" : "Verification failed");
+        System.exit(problems.isEmpty() ? 0 : 1);
+    }
+
+    private static String stopReason(ByteBuffer buffer, int position) {
+        if (position + 4 > buffer.capacity()) {
+            return "end of file";
+        }
+        int length = buffer.getInt(position);
+        if (length == JournalRecord.END) {
+            return "end marker";
+        }
+        if (length == JournalRecord.WRAP) {
+            return "wrap marker, the writer continued at the front";
+        }
+        if (JournalRecord.read(buffer, position) != null) {
+            return "record out of sequence, left from before the last wrap";
+        }
+        // a record is only acknowledged after it was forced to disk completely
+        return "incomplete record, written when the process stopped and never acknowledged";
+    }
+
+    private static List<String> verify(List<JournalRecord> records) {
+        List<String> problems = new ArrayList<>();
+        Set<Integer> reserved = new HashSet<>();
+        Set<Integer> cancelled = new HashSet<>();
+        // caregiver and date of every booking that has not been cancelled
+        Map<String, Integer> booked = new HashMap<>();
+        for (JournalRecord record : records) {
+            Appointment appointment = record.getAppointment();
+            int id = appointment.getId();
+            String slot = appointment.getCaregiver() + " on " + appointment.getTime();
+            if (record.getType() == JournalRecord.Type.RESERVE) {
+                if (!reserved.add(id)) {
+                    problems.add("appointment " + id + " is reserved twice (sequence " + record.getSequence() + ")");
+                }
+                Integer other = booked.put(slot.toLowerCase(), id);
+                if (other != null) {
+                    problems.add(slot + " is booked by appointments " + other + " and " + id);
+                }
+            } else {
+                if (!cancelled.add(id)) {
+                    problems.add("appointment " + id + " is cancelled twice (sequence " + record.getSequence() + ")");
+                }
+                booked.remove(slot.toLowerCase(), id);
+            }
+        }
+        return problems;
+    }
+}
@@ -0,0 +1,147 @@
+package scheduler.journal;
+
+import scheduler.model.Appointment;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.zip.CRC32;
+
+/**
+ * One acknowledged reservation or cancellation in the journal.
+ *
+ * On disk a record is the length of its payload (int) and the CRC32 of the payload (int), followed by the
+ * payload: the sequence number (long), the type (byte), the appointment id (int), the date as an epoch day
+ * (int), and the patient, caregiver and vaccine names as UTF-8 with a short length prefix. A length of END
+ * marks the end of the written records, and a length of WRAP marks that the writer continued at the start
+ * of the file.
+ */
+public class JournalRecord {
+
+    public enum Type {
+        RESERVE, CANCEL
+    }
+
+    static final int END = 0;
+    static final int WRAP = -1;
+
+    // length and CRC
+    private static final int PREFIX = 8;
+    // sequence, type, id and date
+    private static final int FIXED = 8 + 1 + 4 + 4;
+    // the names are varchar(255), so a payload can never be larger than this
+    private static final int MAX_PAYLOAD = FIXED + 3 * (2 + 255 * 3);
+
+    private final long sequence;
+    private final Type type;
+    private final Appointment appointment;
+
+    public JournalRecord(long sequence, Type type, Appointment appointment) {
+        this.sequence = sequence;
+        this.type = type;
+        this.appointment = appointment;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Appointment getAppointment() {
+        return appointment;
+    }
+
+    // encodes the record, the result is written to the journal as is
+    byte[] encode() {
+        byte[] patient = appointment.getPatient().getBytes(StandardCharsets.UTF_8);
+        byte[] caregiver = appointment.getCaregiver().getBytes(StandardCharsets.UTF_8);
+        byte[] vaccine = appointment.getVaccineName().getBytes(StandardCharsets.UTF_8);
+        int length = FIXED + 6 + patient.length + caregiver.length + vaccine.length;
+        if (length > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Names are too long for a journal record!");
+        }
+        ByteBuffer payload = ByteBuffer.allocate(PREFIX + length);
+        payload.position(PREFIX);
+        payload.putLong(sequence);
+        payload.put((byte) (type.ordinal() + 1));
+        payload.putInt(appointment.getId());
+        payload.putInt((int) appointment.getTime().toLocalDate().toEpochDay());
+        putString(payload, patient);
+        putString(payload, caregiver);
+        putString(payload, vaccine);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), PREFIX, length);
+        payload.putInt(0, length);
+        payload.putInt(4, (int) crc.getValue());
+        return payload.array();
+    }
+
+    // the number of bytes the record starting at position takes, including its length and CRC
+    static int size(ByteBuffer buffer, int position) {
+        return PREFIX + buffer.getInt(position);
+    }
+
+    /**
+     * Decodes the record starting at position, or returns null if there is no complete record with a matching
+     * CRC there, e.g. because the process died while writing it.
+     */
+    static JournalRecord read(ByteBuffer buffer, int position) {
+        if (position < 0 || position + PREFIX > buffer.limit()) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length < FIXED || length > MAX_PAYLOAD || position + PREFIX + length > buffer.limit()) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + PREFIX);
+        view.get(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+            return null;
+        }
+
+        ByteBuffer payload = ByteBuffer.wrap(bytes);
+        long sequence = payload.getLong();
+        int type = payload.get() - 1;
+        if (type < 0 || type >= Type.values().length) {
+            return null;
+        }
+        int id = payload.getInt();
+        Date time = Date.valueOf(LocalDate.ofEpochDay(payload.getInt()));
+        try {
+            String patient = getString(payload);
+            String caregiver = getString(payload);
+            String vaccine = getString(payload);
+            return new JournalRecord(sequence, Type.values()[type], new Appointment(id, patient, caregiver, vaccine,
+                    time));
+        } catch (RuntimeException e) {
+            // the lengths inside the payload do not add up
+            return null;
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return sequence + " " + type + " " + appointment.getId() + " " + appointment.getTime() + " " +
+                appointment.getPatient() + " " + appointment.getCaregiver() + " " + appointment.getVaccineName();
+    }
+}
@@ -0,0 +1,175 @@
+package scheduler.metrics;
+
+import scheduler.cache.UsernameFilter;
+import scheduler.db.Concurrency;
+import scheduler.db.ReplicaSet;
+import scheduler.journal.Journal;
+import scheduler.repository.shard.ShardRouter;
+import scheduler.reservation.ReservationBatcher;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latency histograms of the process: one per command, plus the time spent waiting for a pooled
+ * connection (acquire), the time a connection is held while a command talks to the database (db) and the
+ * time a journal force takes (journal_sync).
+ *
+ * Every histogram is registered with the platform MBean server under scheduler:type=Latency, next to
+ * scheduler:type=Stats for the pool and cache counters. The stats command prints the same numbers, and
+ * startLog can print a summary line to stderr at a fixed interval.
+ */
+public class Metrics {
+
+    private static final Map<String, LatencyHistogram> commands = new ConcurrentSkipListMap<>();
+    private static final LatencyHistogram acquire = register(new LatencyHistogram("acquire"), "Phase");
+    private static final LatencyHistogram db = register(new LatencyHistogram("db"), "Phase");
+    private static final LatencyHistogram journalSync = register(new LatencyHistogram("journal_sync"), "Phase");
+    private static final SchedulerStats stats = register(new SchedulerStats());
+
+    private static ScheduledExecutorService logger = null;
+
+    // returns the histogram of a command, creating it on first use
+    public static LatencyHistogram command(String name) {
+        return commands.computeIfAbsent(name, n -> register(new LatencyHistogram(n), "Command"));
+    }
+
+    public static LatencyHistogram connectionAcquire() {
+        return acquire;
+    }
+
+    public static LatencyHistogram database() {
+        return db;
+    }
+
+    public static LatencyHistogram journalSync() {
+        return journalSync;
+    }
+
+    // one line per command and phase that has run, then the pool and cache counters
+    public static List<String> report() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "%-26s %9s %10s %10s %10s %10s %10s", "(ms)", "count", "mean",
+                "p50", "p99", "p999", "max"));
+        for (LatencyHistogram histogram : commands.values()) {
+            addLine(lines, histogram);
+        }
+        addLine(lines, acquire);
+        addLine(lines, db);
+        addLine(lines, journalSync);
+        lines.add(String.format(Locale.ROOT, "pool: %d connections, %d active, %d idle",
+                stats.getPoolTotalConnections(), stats.getPoolActiveConnections(), stats.getPoolIdleConnections()));
+        lines.add(String.format(Locale.ROOT, "statement cache hit rate: %.1f%%", stats.getStatementCacheHitRate() * 100));
+        lines.add(String.format(Locale.ROOT, "vaccine cache: %d hits, %d misses",
+                stats.getVaccineCacheHits(), stats.getVaccineCacheMisses()));
+        lines.add(UsernameFilter.patients().describe());
+        lines.add(UsernameFilter.caregivers().describe());
+        Journal journal = Journal.getInstance();
+        if (journal != null) {
+            lines.add(journal.describe());
+        }
+        ReservationBatcher batcher = ReservationBatcher.getInstance();
+        if (batcher != null) {
+            lines.add(batcher.describe());
+        }
+        ReplicaSet replicas = ReplicaSet.getInstance();
+        if (replicas != null) {
+            lines.add(replicas.describe());
+        }
+        ShardRouter router = ShardRouter.getInstance();
+        if (router != null) {
+            lines.add(router.describe());
+        }
+        if (Concurrency.isVersioned()) {
+            lines.add(String.format(Locale.ROOT, "concurrency: %s, %d conflicts, %d gave up",
+                    Concurrency.getStrategy().toString().toLowerCase(Locale.ROOT), Concurrency.getConflicts(),
+                    Concurrency.getFailures()));
+        }
+        return lines;
+    }
+
+    /**
+     * Prints the p50/p99/max of every command that has run to stderr every StatsLogSeconds seconds, or every
+     * defaultSeconds if that is not set. Does nothing if the interval is 0 or the log is already running.
+     */
+    public static synchronized void startLog(long defaultSeconds) {
+        String setting = System.getenv("StatsLogSeconds");
+        long seconds = setting == null || setting.isEmpty() ? defaultSeconds : Long.parseLong(setting.trim());
+        if (seconds <= 0 || logger != null) {
+            return;
+        }
+        logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-log");
+            t.setDaemon(true);
+            return t;
+        });
+        logger.scheduleAtFixedRate(Metrics::log, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    private static void log() {
+        StringBuilder line = new StringBuilder("stats:");
+        for (LatencyHistogram histogram : commands.values()) {
+            appendSummary(line, histogram);
+        }
+        appendSummary(line, acquire);
+        appendSummary(line, db);
+        appendSummary(line, journalSync);
+        // nothing has run yet
+        if (line.length() > "stats:".length()) {
+            System.err.println(line);
+        }
+    }
+
+    private static void addLine(List<String> lines, LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        if (snapshot.getCount() == 0) {
+            return;
+        }
+        lines.add(String.format(Locale.ROOT, "%-26s %9d %10.3f %10.3f %10.3f %10.3f %10.3f", histogram.getName(),
+                snapshot.getCount(), snapshot.getMean() / 1e6, snapshot.getPercentile(0.50) / 1e6,
+                snapshot.getPercentile(0.99) / 1e6, snapshot.getPercentile(0.999) / 1e6, snapshot.getMax() / 1e6));
+    }
+
+    private static void appendSummary(StringBuilder line, LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        if (snapshot.getCount() == 0) {
+            return;
+        }
+        line.append(String.format(Locale.ROOT, " %s n=%d p50=%.3fms p99=%.3fms max=%.3fms;", histogram.getName(),
+                snapshot.getCount(), snapshot.getPercentile(0.50) / 1e6, snapshot.getPercentile(0.99) / 1e6,
+                snapshot.getMax() / 1e6));
+    }
+
+    private static LatencyHistogram register(LatencyHistogram histogram, String group) {
+        registerMBean(histogram, "scheduler:type=Latency,group=" + group + ",name=" + ObjectName.quote(histogram.getName()));
+        return histogram;
+    }
+
+    private static SchedulerStats register(SchedulerStats schedulerStats) {
+        registerMBean(schedulerStats, "scheduler:type=Stats");
+        return schedulerStats;
+    }
+
+    // JMX is only a view of the numbers, the scheduler works the same if registration fails
+    private static void registerMBean(Object mbean, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(mbean, objectName);
+            }
+        } catch (JMException | SecurityException e) {
+            e.printStackTrace();
+        }
+    }
+}
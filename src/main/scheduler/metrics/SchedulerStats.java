@@ -0,0 +1,43 @@
+package scheduler.metrics;
+
+import scheduler.cache.VaccineCache;
+import scheduler.db.ConnectionManager;
+import scheduler.db.StatementCache;
+import scheduler.repository.Repositories;
+
+/**
+ * Reads the counters the connection pool and the caches already keep. The pool is reported as empty with the
+ * in-memory storage backend, which never opens it.
+ */
+public class SchedulerStats implements SchedulerStatsMBean {
+
+    @Override
+    public int getPoolTotalConnections() {
+        return Repositories.isInMemory() ? 0 : ConnectionManager.getPool().getTotalConnections();
+    }
+
+    @Override
+    public int getPoolActiveConnections() {
+        return Repositories.isInMemory() ? 0 : ConnectionManager.getPool().getActiveConnections();
+    }
+
+    @Override
+    public int getPoolIdleConnections() {
+        return Repositories.isInMemory() ? 0 : ConnectionManager.getPool().getIdleConnections();
+    }
+
+    @Override
+    public double getStatementCacheHitRate() {
+        return StatementCache.getHitRate();
+    }
+
+    @Override
+    public long getVaccineCacheHits() {
+        return VaccineCache.getInstance().getHits();
+    }
+
+    @Override
+    public long getVaccineCacheMisses() {
+        return VaccineCache.getInstance().getMisses();
+    }
+}
@@ -0,0 +1,19 @@
+package scheduler.metrics;
+
+/**
+ * The JMX view of the scheduler's connection pool and caches.
+ */
+public interface SchedulerStatsMBean {
+
+    int getPoolTotalConnections();
+
+    int getPoolActiveConnections();
+
+    int getPoolIdleConnections();
+
+    double getStatementCacheHitRate();
+
+    long getVaccineCacheHits();
+
+    long getVaccineCacheMisses();
+}
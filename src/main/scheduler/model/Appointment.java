@@ -0,0 +1,62 @@
+package scheduler.model;
+
+import java.sql.Date;
+
+public class Appointment {
+    private final int id;
+    private final String patient;
+    private final String caregiver;
+    private final String vaccineName;
+    private final Date time;
+    // the row Version when the appointment was read, for optimistic concurrency
+    private final int version;
+
+    public Appointment(int id, String patient, String caregiver, String vaccineName, Date time) {
+        this(id, patient, caregiver, vaccineName, time, 0);
+    }
+
+    public Appointment(int id, String patient, String caregiver, String vaccineName, Date time, int version) {
+        this.id = id;
+        this.patient = patient;
+        this.caregiver = caregiver;
+        this.vaccineName = vaccineName;
+        this.time = time;
+        this.version = version;
+    }
+
+    // Getters
+    public int getId() {
+        return id;
+    }
+
+    public String getPatient() {
+        return patient;
+    }
+
+    public String getCaregiver() {
+        return caregiver;
+    }
+
+    public String getVaccineName() {
+        return vaccineName;
+    }
+
+    public Date getTime() {
+        return time;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "Appointment{" +
+                "id=" + id +
+                ", patient='" + patient + '\'' +
+                ", caregiver='" + caregiver + '\'' +
+                ", vaccineName='" + vaccineName + '\'' +
+                ", time=" + time +
+                '}';
+    }
+}
@@ -1,10 +1,15 @@
 package scheduler.model;
 
-import scheduler.db.ConnectionManager;
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.UsernameFilter;
+import scheduler.repository.Credentials;
+import scheduler.repository.Repositories;
 import scheduler.util.Util;
 
 import java.sql.*;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 public class Caregiver {
     private final String username;
@@ -37,38 +42,38 @@ public class Caregiver {
     }
 
     public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addCaregiver = "INSERT INTO Caregivers VALUES (? , ?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addCaregiver);
-            statement.setString(1, this.username);
-            statement.setBytes(2, this.salt);
-            statement.setBytes(3, this.hash);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
-        }
+        Repositories.caregivers().save(this.username, this.salt, this.hash);
+        UsernameFilter.caregivers().add(this.username);
     }
 
     public void uploadAvailability(Date d) throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addAvailability = "INSERT INTO Availabilities VALUES (? , ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addAvailability);
-            statement.setDate(1, d);
-            statement.setString(2, this.username);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
+        Repositories.availability().add(d, this.username);
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        if (index != null) {
+            index.add(d, this.username);
+        }
+    }
+
+    // Uploads availability for many dates in one transaction, skipping dates that were already uploaded.
+    // Returns the number of dates added.
+    public int uploadAvailability(List<Date> dates) throws SQLException {
+        return uploadAvailabilities(Collections.singletonMap(this.username, dates));
+    }
+
+    /**
+     * Uploads availability for many caregivers in one transaction. Dates a caregiver already has and caregivers
+     * that do not exist are skipped instead of failing the whole upload.
+     * Returns the number of availability rows added.
+     */
+    public static int uploadAvailabilities(Map<String, List<Date>> datesByCaregiver) throws SQLException {
+        List<Map.Entry<String, Date>> inserted = Repositories.availability().addMissing(datesByCaregiver);
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        if (index != null) {
+            for (Map.Entry<String, Date> row : inserted) {
+                index.add(row.getValue(), row.getKey());
+            }
         }
+        return inserted.size();
     }
 
     public static class CaregiverBuilder {
@@ -99,35 +104,19 @@ public class Caregiver {
         }
 
         public Caregiver get() throws SQLException {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
-
-            String getCaregiver = "SELECT Salt, Hash FROM Caregivers WHERE Username = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(getCaregiver);
-                statement.setString(1, this.username);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    // we need to call Util.trim() to get rid of the paddings,
-                    // try to remove the use of Util.trim() and you'll see :)
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    // check if the password matches
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        return new Caregiver(this);
-                    }
-                }
+            Credentials credentials = Repositories.caregivers().find(this.username);
+            if (credentials == null) {
+                return null;
+            }
+            byte[] salt = credentials.getSalt();
+            byte[] hash = credentials.getHash();
+            // check if the password matches
+            if (!Util.verifyHashAsync(password, salt, hash).join()) {
                 return null;
-            } catch (SQLException e) {
-                throw new SQLException();
-            } finally {
-                cm.closeConnection();
             }
+            this.salt = salt;
+            this.hash = hash;
+            return new Caregiver(this);
         }
     }
 }
@@ -0,0 +1,115 @@
+package scheduler.model;
+
+import scheduler.cache.VaccineCache;
+import scheduler.db.ConnectionManager;
+import scheduler.db.NamedStatement;
+import scheduler.repository.Repositories;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges dose increments (add_doses, cancel refunds) for the same vaccine and writes them out as one
+ * relative UPDATE per vaccine per flush interval.
+ *
+ * Coalescing is off unless the DoseFlushMillis environment variable is set. While it is on, the Vaccines
+ * table can lag behind accepted increments by up to one flush interval; decrements are never coalesced,
+ * so a pending increment can only make reserve reject a booking it could have taken, never oversell.
+ */
+public class DoseCoalescer {
+
+    private static final DoseCoalescer instance = create();
+
+    private final Map<String, Integer> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    private DoseCoalescer(long flushMillis) {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "dose-coalescer");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushQuietly, "dose-coalescer-shutdown"));
+    }
+
+    private static DoseCoalescer create() {
+        String setting = System.getenv("DoseFlushMillis");
+        // in-memory doses are plain atomic counters, there is nothing to coalesce
+        if (setting == null || setting.isEmpty() || Repositories.isInMemory()) {
+            return null;
+        }
+        long flushMillis = Long.parseLong(setting.trim());
+        return flushMillis > 0 ? new DoseCoalescer(flushMillis) : null;
+    }
+
+    // returns null when coalescing is disabled
+    public static DoseCoalescer getInstance() {
+        return instance;
+    }
+
+    public void add(String vaccineName, int num) {
+        pending.merge(vaccineName, num, Integer::sum);
+    }
+
+    public int pendingDoses(String vaccineName) {
+        return pending.getOrDefault(vaccineName, 0);
+    }
+
+    /**
+     * Writes all pending increments in one transaction. If the write fails the increments are put back
+     * and retried at the next flush.
+     */
+    public synchronized void flush() throws SQLException {
+        Map<String, Integer> batch = new HashMap<>();
+        for (String vaccineName : pending.keySet()) {
+            Integer delta = pending.remove(vaccineName);
+            if (delta != null && delta != 0) {
+                batch.put(vaccineName, delta);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            con.setAutoCommit(false);
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.ADJUST_DOSES);
+            for (Map.Entry<String, Integer> entry : batch.entrySet()) {
+                statement.setInt(1, entry.getValue());
+                statement.setString(2, entry.getKey());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            con.commit();
+            for (Map.Entry<String, Integer> entry : batch.entrySet()) {
+                VaccineCache.getInstance().adjust(entry.getKey(), entry.getValue());
+            }
+        } catch (SQLException e) {
+            batch.forEach(this::add);
+            throw e;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package scheduler.model;
 
-import scheduler.db.ConnectionManager;
+import scheduler.cache.VaccineCache;
+import scheduler.journal.Journal;
+import scheduler.repository.Repositories;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 
 public class Vaccine {
     private final String vaccineName;
@@ -31,64 +31,71 @@ public class Vaccine {
     }
 
     public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addDoses = "INSERT INTO vaccines VALUES (?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addDoses);
-            statement.setString(1, this.vaccineName);
-            statement.setInt(2, this.availableDoses);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
-        }
+        Repositories.vaccines().create(this.vaccineName, this.availableDoses);
+        VaccineCache.getInstance().update(this.vaccineName, this.availableDoses);
+        journalDosesAdded(this.vaccineName, this.availableDoses);
     }
 
     // Increment the available doses
+    // The update is relative, so concurrent add_doses and reserve calls never overwrite each other. When write
+    // coalescing is enabled the increment is queued and applied together with other increments at the next flush.
     public void increaseAvailableDoses(int num) throws SQLException {
         if (num <= 0) {
             throw new IllegalArgumentException("Argument cannot be negative!");
         }
-        this.availableDoses += num;
-
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String removeAvailability  = "UPDATE vaccines SET Doses = ? WHERE name = ?;";
-        try {
-            PreparedStatement statement = con.prepareStatement(removeAvailability);
-            statement.setInt(1, this.availableDoses);
-            statement.setString(2, this.vaccineName);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
+        DoseCoalescer coalescer = DoseCoalescer.getInstance();
+        if (coalescer != null) {
+            coalescer.add(this.vaccineName, num);
+            this.availableDoses += num;
+            journalDosesAdded(this.vaccineName, num);
+            return;
+        }
+
+        Integer doses = Repositories.vaccines().increase(this.vaccineName, num);
+        if (doses != null) {
+            this.availableDoses = doses;
+            VaccineCache.getInstance().update(this.vaccineName, this.availableDoses);
+            journalDosesAdded(this.vaccineName, num);
         }
     }
 
     // Decrement the available doses
+    // The decrement only applies while enough doses are left in the database, whatever this object last saw.
     public void decreaseAvailableDoses(int num) throws SQLException {
-        if (this.availableDoses - num < 0) {
+        if (num <= 0) {
+            throw new IllegalArgumentException("Argument cannot be negative!");
+        }
+        // with the journal on, doses of acknowledged reservations may still be in the table
+        Journal journal = Journal.getInstance();
+        if (journal != null && !journal.takeDoses(this.vaccineName, num)) {
+            throw new IllegalArgumentException("Not enough available doses!");
+        }
+        Integer doses = Repositories.vaccines().decrease(this.vaccineName, num);
+        if (doses == null) {
+            journalDosesAdded(this.vaccineName, num);
             throw new IllegalArgumentException("Not enough available doses!");
         }
-        this.availableDoses -= num;
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String removeAvailability  = "UPDATE vaccines SET Doses = ? WHERE name = ?;";
-        try {
-            PreparedStatement statement = con.prepareStatement(removeAvailability);
-            statement.setInt(1, this.availableDoses);
-            statement.setString(2, this.vaccineName);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
+        this.availableDoses = doses;
+        VaccineCache.getInstance().update(this.vaccineName, this.availableDoses);
+    }
+
+    /**
+     * Adds doses to many vaccines at once, creating the vaccines that do not exist yet. Either every count is
+     * applied or none is.
+     */
+    public static void addDoses(Map<String, Integer> dosesByVaccine) throws SQLException {
+        Repositories.vaccines().addAll(dosesByVaccine);
+        VaccineCache.getInstance().invalidate();
+        for (Map.Entry<String, Integer> entry : dosesByVaccine.entrySet()) {
+            journalDosesAdded(entry.getKey(), entry.getValue());
+        }
+    }
+
+    // keeps the journal's dose ledger in step with doses added outside it
+    private static void journalDosesAdded(String vaccineName, int num) {
+        Journal journal = Journal.getInstance();
+        if (journal != null) {
+            journal.dosesAdded(vaccineName, num);
         }
     }
 
@@ -123,24 +130,12 @@ public class Vaccine {
         }
 
         public Vaccine get() throws SQLException {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
-
-            String getVaccine = "SELECT Name, Doses FROM Vaccines WHERE Name = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(getVaccine);
-                statement.setString(1, this.vaccineName);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    this.availableDoses = resultSet.getInt("Doses");
-                    return new Vaccine(this);
-                }
+            Integer doses = Repositories.vaccines().findDoses(this.vaccineName);
+            if (doses == null) {
                 return null;
-            } catch (SQLException e) {
-                throw new SQLException();
-            } finally {
-                cm.closeConnection();
             }
+            this.availableDoses = doses;
+            return new Vaccine(this);
         }
     }
 }
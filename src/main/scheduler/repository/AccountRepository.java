@@ -0,0 +1,20 @@
+package scheduler.repository;
+
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * The accounts of one kind of user, patients or caregivers. Usernames are compared case-insensitively.
+ */
+public interface AccountRepository {
+
+    boolean exists(String username) throws SQLException;
+
+    // fails if the username is already taken
+    void save(String username, byte[] salt, byte[] hash) throws SQLException;
+
+    // returns null for unknown usernames
+    Credentials find(String username) throws SQLException;
+
+    void forEachUsername(Consumer<String> action) throws SQLException;
+}
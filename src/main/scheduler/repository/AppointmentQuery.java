@@ -0,0 +1,113 @@
+package scheduler.repository;
+
+import scheduler.model.Appointment;
+
+import java.sql.Date;
+
+/**
+ * One page of a user's appointments, in (time, id) order: optionally only those in a date range, optionally
+ * only those after the last appointment of the previous page (keyset pagination), and at most limit of them.
+ */
+public class AppointmentQuery {
+    // stand-ins for an open end of the date range, so the query text never changes
+    public static final Date FIRST_DATE = Date.valueOf("1900-01-01");
+    public static final Date LAST_DATE = Date.valueOf("9999-12-31");
+
+    private final String username;
+    private final boolean caregiver;
+    private final Date from;
+    private final Date to;
+    private final Date afterTime;
+    private final int afterId;
+    private final int limit;
+
+    private AppointmentQuery(AppointmentQueryBuilder builder) {
+        this.username = builder.username;
+        this.caregiver = builder.caregiver;
+        this.from = builder.from;
+        this.to = builder.to;
+        this.afterTime = builder.afterTime;
+        this.afterId = builder.afterId;
+        this.limit = builder.limit;
+    }
+
+    // Getters
+    public String getUsername() {
+        return username;
+    }
+
+    // true for the caregiver's appointments, false for the patient's
+    public boolean isCaregiver() {
+        return caregiver;
+    }
+
+    public Date getFrom() {
+        return from;
+    }
+
+    public Date getTo() {
+        return to;
+    }
+
+    public Date getAfterTime() {
+        return afterTime;
+    }
+
+    public int getAfterId() {
+        return afterId;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    // the earliest date the page can start on, where an index range scan begins
+    public Date getLowerBound() {
+        return afterTime.after(from) ? afterTime : from;
+    }
+
+    // whether the appointment comes after the previous page's last appointment
+    public boolean isAfterCursor(Appointment appointment) {
+        int byTime = appointment.getTime().compareTo(afterTime);
+        return byTime > 0 || (byTime == 0 && appointment.getId() > afterId);
+    }
+
+    public static class AppointmentQueryBuilder {
+        private final String username;
+        private final boolean caregiver;
+        private Date from = FIRST_DATE;
+        private Date to = LAST_DATE;
+        private Date afterTime = FIRST_DATE;
+        private int afterId = Integer.MIN_VALUE;
+        private int limit = Integer.MAX_VALUE;
+
+        public AppointmentQueryBuilder(String username, boolean caregiver) {
+            this.username = username;
+            this.caregiver = caregiver;
+        }
+
+        public AppointmentQueryBuilder between(Date from, Date to) {
+            this.from = from;
+            this.to = to;
+            return this;
+        }
+
+        public AppointmentQueryBuilder after(Date time, int id) {
+            this.afterTime = time;
+            this.afterId = id;
+            return this;
+        }
+
+        public AppointmentQueryBuilder limit(int limit) {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Limit has to be positive!");
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        public AppointmentQuery build() {
+            return new AppointmentQuery(this);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package scheduler.repository;
+
+import scheduler.model.Appointment;
+import scheduler.reservation.Reservation;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Appointments, together with the availability and dose bookkeeping that booking and cancelling them needs.
+ */
+public interface AppointmentRepository {
+
+    /**
+     * Books a caregiver available on the date and one dose of the vaccine for the patient, atomically: either
+     * the caregiver's availability is used up, a dose is taken and the appointment exists, or nothing changed
+     * and the reservation says why.
+     */
+    Reservation reserve(String patient, Date date, String vaccine) throws SQLException;
+
+    // returns null for unknown ids
+    Appointment find(int id) throws SQLException;
+
+    /**
+     * Removes the appointment, puts its dose back and makes its caregiver available again, atomically.
+     * Returns false if the appointment no longer exists, e.g. because it was cancelled concurrently.
+     */
+    boolean cancel(Appointment appointment) throws SQLException;
+
+    /**
+     * Cancels every appointment the cancellation selects at once, giving back doses and caregivers as it says,
+     * all or nothing. Once that is committed, the cancelled appointments are streamed to the action ordered by
+     * patient, time and id, so a patient's notifications come together. Returns the number cancelled.
+     */
+    int cancelAll(BulkCancellation cancellation, Consumer<Appointment> cancelled) throws SQLException;
+
+    /**
+     * Streams one page of a user's appointments to the action while they are read, in (time, id) order.
+     * Returns the number of appointments streamed.
+     */
+    int scan(AppointmentQuery query, Consumer<Appointment> action) throws SQLException;
+
+    // all of the patient's appointments, sorted by time and id
+    default List<Appointment> findByPatient(String patient) throws SQLException {
+        List<Appointment> found = new ArrayList<>();
+        scan(new AppointmentQuery.AppointmentQueryBuilder(patient, false).build(), found::add);
+        return found;
+    }
+
+    // all of the caregiver's appointments, sorted by time and id
+    default List<Appointment> findByCaregiver(String caregiver) throws SQLException {
+        List<Appointment> found = new ArrayList<>();
+        scan(new AppointmentQuery.AppointmentQueryBuilder(caregiver, true).build(), found::add);
+        return found;
+    }
+}
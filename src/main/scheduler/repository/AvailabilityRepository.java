@@ -0,0 +1,30 @@
+package scheduler.repository;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The dates caregivers are available on.
+ */
+public interface AvailabilityRepository {
+
+    // fails if the caregiver is already available on the date
+    void add(Date date, String caregiver) throws SQLException;
+
+    /**
+     * Adds many availabilities at once, all or nothing. Dates a caregiver already has and caregivers that do
+     * not exist are skipped. Returns the (caregiver, date) pairs that were added.
+     */
+    List<Map.Entry<String, Date>> addMissing(Map<String, List<Date>> datesByCaregiver) throws SQLException;
+
+    // the caregivers available on a date, sorted by username
+    List<String> caregivers(Date date) throws SQLException;
+
+    /**
+     * Summarizes the availability of every date from start to end (inclusive) that has at least one caregiver,
+     * in date order, with up to names caregivers per date.
+     */
+    List<AvailabilitySummary> summarize(Date start, Date end, int names) throws SQLException;
+}
@@ -0,0 +1,31 @@
+package scheduler.repository;
+
+import java.sql.Date;
+import java.util.List;
+
+/**
+ * How many caregivers are available on a date, and the first few of them in username order.
+ */
+public class AvailabilitySummary {
+    private final Date date;
+    private final int caregivers;
+    private final List<String> firstCaregivers;
+
+    public AvailabilitySummary(Date date, int caregivers, List<String> firstCaregivers) {
+        this.date = date;
+        this.caregivers = caregivers;
+        this.firstCaregivers = firstCaregivers;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public int getCaregivers() {
+        return caregivers;
+    }
+
+    public List<String> getFirstCaregivers() {
+        return firstCaregivers;
+    }
+}
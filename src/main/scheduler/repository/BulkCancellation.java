@@ -0,0 +1,106 @@
+package scheduler.repository;
+
+import java.sql.Date;
+
+/**
+ * Which appointments to cancel at once and what happens to their doses and caregivers: every appointment
+ * from one date to another (inclusive), optionally only those of one caregiver or one vaccine.
+ *
+ * By default the doses go back to their vaccines and the caregivers become available again, as with a single
+ * cancel. A recalled vaccine's doses are not given back (withoutRefund). A caregiver who cannot work
+ * (withdrawCaregiver) does not become available again, and their open availability in the range is removed
+ * too, so nobody books them in the meantime.
+ */
+public class BulkCancellation {
+    private final Date from;
+    private final Date to;
+    private final String caregiver;
+    private final String vaccine;
+    private final boolean refund;
+    private final boolean withdraw;
+
+    private BulkCancellation(BulkCancellationBuilder builder) {
+        this.from = builder.from;
+        this.to = builder.to;
+        this.caregiver = builder.caregiver;
+        this.vaccine = builder.vaccine;
+        this.refund = builder.refund;
+        this.withdraw = builder.withdraw;
+    }
+
+    // Getters
+    public Date getFrom() {
+        return from;
+    }
+
+    public Date getTo() {
+        return to;
+    }
+
+    // null for every caregiver
+    public String getCaregiver() {
+        return caregiver;
+    }
+
+    // null for every vaccine
+    public String getVaccine() {
+        return vaccine;
+    }
+
+    public boolean isRefund() {
+        return refund;
+    }
+
+    public boolean isWithdraw() {
+        return withdraw;
+    }
+
+    // whether the caregivers of the cancelled appointments become available again
+    public boolean isRelease() {
+        return !withdraw;
+    }
+
+    public static class BulkCancellationBuilder {
+        private final Date from;
+        private final Date to;
+        private String caregiver = null;
+        private String vaccine = null;
+        private boolean refund = true;
+        private boolean withdraw = false;
+
+        public BulkCancellationBuilder(Date from, Date to) {
+            if (to.before(from)) {
+                throw new IllegalArgumentException("The range has to end after it starts!");
+            }
+            this.from = from;
+            this.to = to;
+        }
+
+        public BulkCancellationBuilder caregiver(String caregiver) {
+            this.caregiver = caregiver;
+            return this;
+        }
+
+        public BulkCancellationBuilder vaccine(String vaccine) {
+            this.vaccine = vaccine;
+            return this;
+        }
+
+        public BulkCancellationBuilder withoutRefund() {
+            this.refund = false;
+            return this;
+        }
+
+        public BulkCancellationBuilder withdrawCaregiver() {
+            this.withdraw = true;
+            return this;
+        }
+
+        public BulkCancellation build() {
+            if (withdraw && caregiver == null) {
+                throw new IllegalArgumentException("Only a named caregiver can be withdrawn!");
+            }
+            return new BulkCancellation(this);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package scheduler.repository;
+
+import scheduler.db.ConnectionManager;
+import scheduler.db.ConnectionPool;
+import scheduler.db.IdAllocator;
+import scheduler.db.NamedStatement;
+import scheduler.repository.jdbc.JdbcAccountRepository;
+import scheduler.repository.jdbc.JdbcAppointmentRepository;
+import scheduler.repository.jdbc.JdbcAvailabilityRepository;
+import scheduler.repository.jdbc.JdbcVaccineRepository;
+import scheduler.repository.memory.MemoryAccountRepository;
+import scheduler.repository.memory.MemoryAppointmentRepository;
+import scheduler.repository.memory.MemoryAvailabilityRepository;
+import scheduler.repository.memory.MemoryVaccineRepository;
+import scheduler.repository.shard.ShardRouter;
+import scheduler.repository.shard.ShardedAppointmentRepository;
+import scheduler.repository.shard.ShardedAvailabilityRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The storage backend of the process, chosen once at startup.
+ *
+ * By default everything is stored in the SQL Server database configured by ConnectionManager. Setting
+ * Storage=memory keeps everything in concurrent in-memory structures instead, which start empty and are
+ * lost when the process exits; use it to run the scheduling logic at memory speed, e.g. for capacity
+ * planning. The caches in front of the database (the availability index, the username filters and dose
+ * coalescing) only apply to the database backend.
+ *
+ * With sharding on (see ShardRouter) availability and appointments are split by date over one repository
+ * per shard, in either backend.
+ */
+public class Repositories {
+
+    private static final boolean inMemory = "memory".equalsIgnoreCase(System.getenv("Storage"));
+
+    private static final AccountRepository patients;
+    private static final AccountRepository caregivers;
+    private static final AvailabilityRepository availability;
+    private static final VaccineRepository vaccines;
+    private static final AppointmentRepository appointments;
+
+    static {
+        if (inMemory) {
+            patients = new MemoryAccountRepository();
+            caregivers = new MemoryAccountRepository();
+            MemoryAvailabilityRepository memoryAvailability = new MemoryAvailabilityRepository(caregivers);
+            MemoryVaccineRepository memoryVaccines = new MemoryVaccineRepository();
+            vaccines = memoryVaccines;
+            ShardRouter router = ShardRouter.getInstance();
+            if (router == null) {
+                availability = memoryAvailability;
+                appointments = new MemoryAppointmentRepository(memoryAvailability, memoryVaccines);
+            } else {
+                List<AvailabilityRepository> availabilityShards = new ArrayList<>();
+                List<AppointmentRepository> appointmentShards = new ArrayList<>();
+                for (int i = 0; i < router.getShards(); i++) {
+                    MemoryAvailabilityRepository shard = new MemoryAvailabilityRepository(caregivers);
+                    availabilityShards.add(shard);
+                    appointmentShards.add(new MemoryAppointmentRepository(shard, memoryVaccines, i,
+                            router.getShards()));
+                }
+                availability = new ShardedAvailabilityRepository(router, availabilityShards, caregivers);
+                appointments = new ShardedAppointmentRepository(router, appointmentShards);
+            }
+        } else {
+            patients = new JdbcAccountRepository(NamedStatement.PATIENT_EXISTS, NamedStatement.ADD_PATIENT,
+                    NamedStatement.GET_PATIENT, NamedStatement.GET_PATIENT_USERNAMES);
+            caregivers = new JdbcAccountRepository(NamedStatement.CAREGIVER_EXISTS, NamedStatement.ADD_CAREGIVER,
+                    NamedStatement.GET_CAREGIVER, NamedStatement.GET_CAREGIVER_USERNAMES);
+            vaccines = new JdbcVaccineRepository();
+            ShardRouter router = ShardRouter.getInstance();
+            if (router == null) {
+                availability = new JdbcAvailabilityRepository();
+                appointments = new JdbcAppointmentRepository();
+            } else {
+                List<AvailabilityRepository> availabilityShards = new ArrayList<>();
+                List<AppointmentRepository> appointmentShards = new ArrayList<>();
+                for (int i = 0; i < router.getShards(); i++) {
+                    ConnectionPool pool = ConnectionManager.createPool(router.getUrl(i));
+                    availabilityShards.add(new JdbcAvailabilityRepository(pool));
+                    appointmentShards.add(new JdbcAppointmentRepository(pool,
+                            IdAllocator.appointmentIds(pool, i, router.getShards())));
+                }
+                availability = new ShardedAvailabilityRepository(router, availabilityShards, caregivers);
+                appointments = new ShardedAppointmentRepository(router, appointmentShards);
+            }
+        }
+    }
+
+    public static boolean isInMemory() {
+        return inMemory;
+    }
+
+    public static boolean isSharded() {
+        return ShardRouter.getInstance() != null;
+    }
+
+    public static AccountRepository patients() {
+        return patients;
+    }
+
+    public static AccountRepository caregivers() {
+        return caregivers;
+    }
+
+    public static AvailabilityRepository availability() {
+        return availability;
+    }
+
+    public static VaccineRepository vaccines() {
+        return vaccines;
+    }
+
+    public static AppointmentRepository appointments() {
+        return appointments;
+    }
+}
@@ -0,0 +1,29 @@
+package scheduler.repository;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Vaccines and their available doses. Names are compared case-insensitively. Dose changes are relative, so
+ * concurrent writers never overwrite each other.
+ */
+public interface VaccineRepository {
+
+    // returns null for unknown vaccines
+    Integer findDoses(String vaccineName) throws SQLException;
+
+    // every vaccine and its available doses
+    Map<String, Integer> findAll() throws SQLException;
+
+    // fails if the vaccine already exists
+    void create(String vaccineName, int doses) throws SQLException;
+
+    // returns the doses after the increase, or null for unknown vaccines
+    Integer increase(String vaccineName, int num) throws SQLException;
+
+    // returns the doses after the decrease, or null if fewer than num doses are left
+    Integer decrease(String vaccineName, int num) throws SQLException;
+
+    // adds doses to many vaccines at once, creating the missing ones, all or nothing
+    void addAll(Map<String, Integer> dosesByVaccine) throws SQLException;
+}
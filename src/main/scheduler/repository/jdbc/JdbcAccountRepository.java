@@ -0,0 +1,105 @@
+package scheduler.repository.jdbc;
+
+import scheduler.db.ConnectionManager;
+import scheduler.db.NamedStatement;
+import scheduler.repository.AccountRepository;
+import scheduler.repository.Credentials;
+import scheduler.util.Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * Accounts stored in the Patients or Caregivers table, depending on the statements it is given.
+ */
+public class JdbcAccountRepository implements AccountRepository {
+
+    private final NamedStatement exists;
+    private final NamedStatement add;
+    private final NamedStatement get;
+    private final NamedStatement usernames;
+
+    public JdbcAccountRepository(NamedStatement exists, NamedStatement add, NamedStatement get,
+                                 NamedStatement usernames) {
+        this.exists = exists;
+        this.add = add;
+        this.get = get;
+        this.usernames = usernames;
+    }
+
+    // a replica may miss an account created moments ago, saving it then fails on the primary key
+    @Override
+    public boolean exists(String username) throws SQLException {
+        ConnectionManager cm = ConnectionManager.forReads();
+        cm.createConnection();
+
+        try {
+            PreparedStatement statement = cm.prepareStatement(exists);
+            statement.setString(1, username);
+            ResultSet resultSet = statement.executeQuery();
+            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
+            return resultSet.isBeforeFirst();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public void save(String username, byte[] salt, byte[] hash) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        try {
+            PreparedStatement statement = cm.prepareStatement(add);
+            statement.setString(1, username);
+            statement.setBytes(2, salt);
+            statement.setBytes(3, hash);
+            statement.executeUpdate();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public Credentials find(String username) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        try {
+            PreparedStatement statement = cm.prepareStatement(get);
+            statement.setString(1, username);
+            ResultSet resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                return null;
+            }
+            // we need to call Util.trim() to get rid of the paddings,
+            // try to remove the use of Util.trim() and you'll see :)
+            return new Credentials(resultSet.getBytes("Salt"), Util.trim(resultSet.getBytes("Hash")));
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public void forEachUsername(Consumer<String> action) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        try {
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            PreparedStatement statement = cm.prepareStatement(usernames);
+            statement.setFetchSize(10_000);
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                action.accept(resultSet.getString("Username"));
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package scheduler.repository.jdbc;
+
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.VaccineCache;
+import scheduler.db.Concurrency;
+import scheduler.db.ConnectionManager;
+import scheduler.db.ConnectionPool;
+import scheduler.db.IdAllocator;
+import scheduler.db.NamedStatement;
+import scheduler.journal.Journal;
+import scheduler.model.Appointment;
+import scheduler.model.DoseCoalescer;
+import scheduler.repository.AppointmentQuery;
+import scheduler.repository.BulkCancellation;
+import scheduler.repository.AppointmentRepository;
+import scheduler.reservation.Reservation;
+import scheduler.reservation.ReservationBatcher;
+import scheduler.reservation.ReservationEngine;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Appointments stored in the Appointment table. Reservations are made by the ReservationEngine, or go through
+ * the Journal or the ReservationBatcher when they are on.
+ *
+ * A repository for a shard stores the appointments in the shard's database and keeps the doses on the main
+ * database: a cancelled appointment's dose is given back after the shard transaction committed.
+ */
+public class JdbcAppointmentRepository implements AppointmentRepository {
+
+    // rows fetched per round trip when streaming appointments
+    private static final int FETCH_SIZE = 500;
+
+    // the shard's pool, null for the main database
+    private final ConnectionPool pool;
+    // books appointments in a single transaction
+    private final ReservationEngine reservationEngine;
+
+    public JdbcAppointmentRepository() {
+        this.pool = null;
+        this.reservationEngine = new ReservationEngine();
+    }
+
+    public JdbcAppointmentRepository(ConnectionPool shardPool, IdAllocator ids) {
+        this.pool = shardPool;
+        this.reservationEngine = new ReservationEngine(shardPool, ids);
+    }
+
+    @Override
+    public Reservation reserve(String patient, Date date, String vaccine) throws SQLException {
+        if (pool != null) {
+            return reservationEngine.reserve(patient, date, vaccine);
+        }
+        Journal journal = Journal.getInstance();
+        if (journal != null) {
+            return journal.reserve(patient, date, vaccine);
+        }
+        ReservationBatcher batcher = ReservationBatcher.getInstance();
+        if (batcher != null) {
+            return batcher.reserve(patient, date, vaccine);
+        }
+        return reservationEngine.reserve(patient, date, vaccine);
+    }
+
+    // with the journal on, acknowledged records the applier has not reached yet take precedence
+    @Override
+    public Appointment find(int id) throws SQLException {
+        Journal journal = pool == null ? Journal.getInstance() : null;
+        if (journal != null) {
+            if (journal.isCancelled(id)) {
+                return null;
+            }
+            Appointment unapplied = journal.getUnapplied(id);
+            if (unapplied != null) {
+                return unapplied;
+            }
+        }
+        ConnectionManager cm = new ConnectionManager(pool);
+        cm.createConnection();
+
+        try {
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.GET_APPOINTMENT);
+            statement.setInt(1, id);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? appointment(resultSet) : null;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // the appointment is removed and the caregiver made available again in one transaction; the dose goes back
+    // in the same transaction too, unless dose coalescing is enabled
+    @Override
+    public boolean cancel(Appointment appointment) throws SQLException {
+        Journal journal = pool == null ? Journal.getInstance() : null;
+        if (journal != null) {
+            return journal.cancel(appointment);
+        }
+        DoseCoalescer coalescer = DoseCoalescer.getInstance();
+        boolean removed;
+        if (Concurrency.isVersioned()) {
+            // a retry compares against the Version the appointment has now
+            Appointment[] current = {appointment};
+            removed = Concurrency.withRetry(() -> {
+                try {
+                    return remove(current[0], coalescer == null);
+                } catch (Concurrency.ConflictException e) {
+                    Appointment latest = find(appointment.getId());
+                    if (latest == null) {
+                        return false;
+                    }
+                    current[0] = latest;
+                    throw e;
+                }
+            });
+        } else {
+            removed = remove(appointment, coalescer == null);
+        }
+        if (!removed) {
+            return false;
+        }
+        if (coalescer != null) {
+            coalescer.add(appointment.getVaccineName(), 1);
+        } else {
+            if (pool != null) {
+                giveBackOnMain(appointment.getVaccineName(), 1);
+            }
+            VaccineCache.getInstance().adjust(appointment.getVaccineName(), 1);
+        }
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        if (index != null) {
+            index.add(appointment.getTime(), appointment.getCaregiver());
+        }
+        return true;
+    }
+
+    private boolean remove(Appointment appointment, boolean refund) throws SQLException {
+        ConnectionManager cm = new ConnectionManager(pool);
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+        try {
+            con.setAutoCommit(false);
+            boolean removed;
+            if (Concurrency.isVersioned()) {
+                removed = Concurrency.removeAppointment(cm, appointment.getId(), appointment.getVersion());
+            } else {
+                PreparedStatement remove = cm.prepareStatement(NamedStatement.REMOVE_APPOINTMENT);
+                remove.setInt(1, appointment.getId());
+                removed = remove.executeUpdate() == 1;
+            }
+            if (!removed) {
+                con.rollback();
+                return false;
+            }
+            // a shard's doses are on the main database, given back once this transaction committed
+            if (refund && pool == null && Concurrency.isVersioned()) {
+                Concurrency.changeDoses(cm, appointment.getVaccineName(), 1);
+            } else if (refund && pool == null) {
+                PreparedStatement increase = cm.prepareStatement(NamedStatement.INCREASE_DOSES);
+                increase.setInt(1, 1);
+                increase.setString(2, appointment.getVaccineName());
+                increase.executeQuery();
+            }
+            PreparedStatement release = cm.prepareStatement(NamedStatement.ADD_AVAILABILITY);
+            release.setDate(1, appointment.getTime());
+            release.setString(2, appointment.getCaregiver());
+            release.executeUpdate();
+            con.commit();
+            return true;
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // one round trip: the batch commits before it returns the cancelled rows, which are streamed as they arrive
+    @Override
+    public int cancelAll(BulkCancellation cancellation, Consumer<Appointment> cancelled) throws SQLException {
+        if (pool == null && Journal.getInstance() != null) {
+            // the journal's dose ledger and unapplied records would not see the cancellations
+            throw new SQLException("Bulk cancellation is not available while the journal is on");
+        }
+        DoseCoalescer coalescer = DoseCoalescer.getInstance();
+        // the batch gives the doses back itself only if they are on this database and not coalesced
+        boolean refundInBatch = cancellation.isRefund() && pool == null && coalescer == null;
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        Map<String, Integer> refunds = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        ConnectionManager cm = new ConnectionManager(pool);
+        if (cm.createConnection() == null) {
+            throw new SQLException("No database connection available");
+        }
+        int count = 0;
+        try {
+            PreparedStatement statement = cm.prepareStatement(refundInBatch ?
+                    NamedStatement.CANCEL_APPOINTMENTS : NamedStatement.CANCEL_APPOINTMENTS_KEEP_DOSES);
+            statement.setDate(1, cancellation.getFrom());
+            statement.setDate(2, cancellation.getTo());
+            statement.setString(3, cancellation.getCaregiver());
+            statement.setString(4, cancellation.getVaccine());
+            statement.setBoolean(5, cancellation.isRelease());
+            statement.setBoolean(6, cancellation.isWithdraw());
+            statement.setFetchSize(FETCH_SIZE);
+            boolean isResultSet = statement.execute();
+            while (!isResultSet && statement.getUpdateCount() != -1) {
+                isResultSet = statement.getMoreResults();
+            }
+            if (isResultSet) {
+                ResultSet resultSet = statement.getResultSet();
+                while (resultSet.next()) {
+                    Appointment appointment = new Appointment(resultSet.getInt("id"), resultSet.getString("PName"),
+                            resultSet.getString("CName"), resultSet.getString("VName"), resultSet.getDate("Time"));
+                    refunds.merge(appointment.getVaccineName(), 1, Integer::sum);
+                    if (index != null && cancellation.isRelease()) {
+                        index.add(appointment.getTime(), appointment.getCaregiver());
+                    }
+                    cancelled.accept(appointment);
+                    count++;
+                }
+            }
+        } finally {
+            cm.closeConnection();
+        }
+
+        if (index != null && cancellation.isWithdraw()) {
+            LocalDate last = cancellation.getTo().toLocalDate();
+            for (LocalDate day = cancellation.getFrom().toLocalDate(); !day.isAfter(last); day = day.plusDays(1)) {
+                index.remove(Date.valueOf(day), cancellation.getCaregiver());
+            }
+        }
+        if (cancellation.isRefund()) {
+            for (Map.Entry<String, Integer> refund : refunds.entrySet()) {
+                if (coalescer != null) {
+                    coalescer.add(refund.getKey(), refund.getValue());
+                } else {
+                    if (!refundInBatch) {
+                        giveBackOnMain(refund.getKey(), refund.getValue());
+                    }
+                    VaccineCache.getInstance().adjust(refund.getKey(), refund.getValue());
+                }
+            }
+        }
+        return count;
+    }
+
+    // an index on (user, Time, id) turns the page into one range scan that stops after limit rows
+    @Override
+    public int scan(AppointmentQuery query, Consumer<Appointment> action) throws SQLException {
+        // the main database's pages may be read from a read replica
+        ConnectionManager cm = pool == null ? ConnectionManager.forReads() : new ConnectionManager(pool);
+        cm.createConnection();
+
+        int count = 0;
+        try {
+            PreparedStatement statement = cm.prepareStatement(query.isCaregiver() ?
+                    NamedStatement.GET_CAREGIVER_APPOINTMENTS : NamedStatement.GET_PATIENT_APPOINTMENTS);
+            statement.setInt(1, query.getLimit());
+            statement.setString(2, query.getUsername());
+            statement.setDate(3, query.getLowerBound());
+            statement.setDate(4, query.getTo());
+            statement.setDate(5, query.getAfterTime());
+            statement.setInt(6, query.getAfterId());
+            statement.setFetchSize(Math.min(query.getLimit(), FETCH_SIZE));
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                action.accept(appointment(resultSet));
+                count++;
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        return count;
+    }
+
+    // an appointment that is gone but whose dose could not be given back only leaves that dose unused
+    private static void giveBackOnMain(String vaccineName, int doses) {
+        ConnectionManager main = new ConnectionManager();
+        try {
+            if (main.createConnection() == null) {
+                throw new SQLException("No database connection available");
+            }
+            PreparedStatement refund = main.prepareStatement(NamedStatement.ADJUST_DOSES);
+            refund.setInt(1, doses);
+            refund.setString(2, vaccineName);
+            refund.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            main.closeConnection();
+        }
+    }
+
+    private static Appointment appointment(ResultSet resultSet) throws SQLException {
+        return new Appointment(resultSet.getInt("id"), resultSet.getString("PName"), resultSet.getString("CName"),
+                resultSet.getString("VName"), resultSet.getDate("Time"), resultSet.getInt("Version"));
+    }
+}
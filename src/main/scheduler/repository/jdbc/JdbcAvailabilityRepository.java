@@ -0,0 +1,152 @@
+package scheduler.repository.jdbc;
+
+import scheduler.db.ConnectionManager;
+import scheduler.db.ConnectionPool;
+import scheduler.db.NamedStatement;
+import scheduler.repository.AvailabilityRepository;
+import scheduler.repository.AvailabilitySummary;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Availability stored in the Availabilities table of the main database, or of one shard.
+ */
+public class JdbcAvailabilityRepository implements AvailabilityRepository {
+    // rows sent to the database per JDBC batch
+    private static final int BATCH_SIZE = 1000;
+
+    // null for the main database
+    private final ConnectionPool pool;
+
+    public JdbcAvailabilityRepository() {
+        this(null);
+    }
+
+    public JdbcAvailabilityRepository(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void add(Date date, String caregiver) throws SQLException {
+        ConnectionManager cm = new ConnectionManager(pool);
+        cm.createConnection();
+
+        try {
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.ADD_AVAILABILITY);
+            statement.setDate(1, date);
+            statement.setString(2, caregiver);
+            statement.executeUpdate();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // the rows are written as JDBC batches in one transaction; on a shard the caregivers are not checked here
+    @Override
+    public List<Map.Entry<String, Date>> addMissing(Map<String, List<Date>> datesByCaregiver) throws SQLException {
+        ConnectionManager cm = new ConnectionManager(pool);
+        Connection con = cm.createConnection();
+
+        List<Map.Entry<String, Date>> inserted = new ArrayList<>();
+        try {
+            con.setAutoCommit(false);
+            PreparedStatement statement = cm.prepareStatement(pool == null ?
+                    NamedStatement.ADD_AVAILABILITY_IF_MISSING : NamedStatement.ADD_SHARD_AVAILABILITY_IF_MISSING);
+            List<Map.Entry<String, Date>> batch = new ArrayList<>(BATCH_SIZE);
+            for (Map.Entry<String, List<Date>> entry : datesByCaregiver.entrySet()) {
+                for (Date d : entry.getValue()) {
+                    statement.setDate(1, d);
+                    statement.setString(2, entry.getKey());
+                    statement.setDate(3, d);
+                    statement.setString(4, entry.getKey());
+                    statement.addBatch();
+                    batch.add(new AbstractMap.SimpleEntry<>(entry.getKey(), d));
+                    if (batch.size() == BATCH_SIZE) {
+                        collectInserted(statement.executeBatch(), batch, inserted);
+                    }
+                }
+            }
+            collectInserted(statement.executeBatch(), batch, inserted);
+            con.commit();
+        } finally {
+            cm.closeConnection();
+        }
+        return inserted;
+    }
+
+    @Override
+    public List<String> caregivers(Date date) throws SQLException {
+        ConnectionManager cm = reader();
+        cm.createConnection();
+
+        List<String> caregivers = new ArrayList<>();
+        try {
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.GET_AVAILABLE_CAREGIVERS);
+            statement.setDate(1, date);
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                caregivers.add(resultSet.getString("Username"));
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        return caregivers;
+    }
+
+    // one grouped query over the primary key range, instead of one query per date
+    @Override
+    public List<AvailabilitySummary> summarize(Date start, Date end, int names) throws SQLException {
+        ConnectionManager cm = reader();
+        cm.createConnection();
+
+        List<AvailabilitySummary> summaries = new ArrayList<>();
+        try {
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.SUMMARIZE_AVAILABILITY);
+            statement.setDate(1, start);
+            statement.setDate(2, end);
+            // every date needs at least one row to report its count
+            statement.setInt(3, Math.max(1, names));
+            ResultSet resultSet = statement.executeQuery();
+            Date date = null;
+            List<String> caregivers = null;
+            while (resultSet.next()) {
+                Date time = resultSet.getDate("Time");
+                if (!time.equals(date)) {
+                    date = time;
+                    caregivers = new ArrayList<>();
+                    summaries.add(new AvailabilitySummary(date, resultSet.getInt("Caregivers"), caregivers));
+                }
+                if (caregivers.size() < names) {
+                    caregivers.add(resultSet.getString("Username"));
+                }
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        return summaries;
+    }
+
+    // the main database's reads may be served by a read replica
+    private ConnectionManager reader() {
+        return pool == null ? ConnectionManager.forReads() : new ConnectionManager(pool);
+    }
+
+    // adds the rows of the executed batch that were actually inserted to inserted, then clears the batch
+    private static void collectInserted(int[] counts, List<Map.Entry<String, Date>> batch,
+                                        List<Map.Entry<String, Date>> inserted) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                inserted.add(batch.get(i));
+            }
+        }
+        batch.clear();
+    }
+}
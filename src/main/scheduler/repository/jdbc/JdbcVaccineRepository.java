@@ -0,0 +1,151 @@
+package scheduler.repository.jdbc;
+
+import scheduler.db.Concurrency;
+import scheduler.db.ConnectionManager;
+import scheduler.db.NamedStatement;
+import scheduler.repository.VaccineRepository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Vaccines stored in the Vaccines table.
+ */
+public class JdbcVaccineRepository implements VaccineRepository {
+
+    @Override
+    public Integer findDoses(String vaccineName) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        try {
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.GET_VACCINE);
+            statement.setString(1, vaccineName);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? resultSet.getInt("Doses") : null;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public Map<String, Integer> findAll() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        Map<String, Integer> doses = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        try {
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.GET_VACCINES);
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                doses.put(resultSet.getString("Name"), resultSet.getInt("Doses"));
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        return doses;
+    }
+
+    @Override
+    public void create(String vaccineName, int doses) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        try {
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.ADD_VACCINE);
+            statement.setString(1, vaccineName);
+            statement.setInt(2, doses);
+            statement.executeUpdate();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public Integer increase(String vaccineName, int num) throws SQLException {
+        if (Concurrency.isVersioned()) {
+            return Concurrency.withRetry(() -> changeDoses(vaccineName, num));
+        }
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        try {
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.INCREASE_DOSES);
+            statement.setInt(1, num);
+            statement.setString(2, vaccineName);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? resultSet.getInt("Doses") : null;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // the decrement only applies while enough doses are left in the database
+    @Override
+    public Integer decrease(String vaccineName, int num) throws SQLException {
+        if (Concurrency.isVersioned()) {
+            return Concurrency.withRetry(() -> changeDoses(vaccineName, -num));
+        }
+        ConnectionManager cm = new ConnectionManager();
+        cm.createConnection();
+
+        try {
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.DECREASE_DOSES);
+            statement.setInt(1, num);
+            statement.setString(2, vaccineName);
+            statement.setInt(3, num);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? resultSet.getInt("Doses") : null;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // read and write the row in one transaction, returns null for unknown vaccines or too few doses
+    private static Integer changeDoses(String vaccineName, int delta) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+        try {
+            con.setAutoCommit(false);
+            Concurrency.Doses doses = Concurrency.changeDoses(cm, vaccineName, delta);
+            con.commit();
+            return doses != null && doses.isChanged() ? doses.getDoses() : null;
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // all vaccines are upserted with one batched MERGE in a single transaction
+    @Override
+    public void addAll(Map<String, Integer> dosesByVaccine) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        try {
+            con.setAutoCommit(false);
+            PreparedStatement statement = cm.prepareStatement(NamedStatement.UPSERT_DOSES);
+            for (Map.Entry<String, Integer> entry : dosesByVaccine.entrySet()) {
+                statement.setString(1, entry.getKey());
+                statement.setInt(2, entry.getValue());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            con.commit();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+}
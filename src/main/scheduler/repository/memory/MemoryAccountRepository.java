@@ -0,0 +1,57 @@
+package scheduler.repository.memory;
+
+import scheduler.repository.AccountRepository;
+import scheduler.repository.Credentials;
+
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Accounts kept in a concurrent map keyed by lower-cased username.
+ */
+public class MemoryAccountRepository implements AccountRepository {
+
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean exists(String username) {
+        return accounts.containsKey(key(username));
+    }
+
+    @Override
+    public void save(String username, byte[] salt, byte[] hash) throws SQLException {
+        if (accounts.putIfAbsent(key(username), new Account(username, new Credentials(salt, hash))) != null) {
+            throw new SQLException("Username already taken: " + username);
+        }
+    }
+
+    @Override
+    public Credentials find(String username) {
+        Account account = accounts.get(key(username));
+        return account == null ? null : account.credentials;
+    }
+
+    @Override
+    public void forEachUsername(Consumer<String> action) {
+        for (Account account : accounts.values()) {
+            action.accept(account.username);
+        }
+    }
+
+    static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static class Account {
+        private final String username;
+        private final Credentials credentials;
+
+        private Account(String username, Credentials credentials) {
+            this.username = username;
+            this.credentials = credentials;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package scheduler.repository.memory;
+
+import scheduler.cache.VaccineCache;
+import scheduler.model.Appointment;
+import scheduler.repository.AppointmentQuery;
+import scheduler.repository.AppointmentRepository;
+import scheduler.repository.BulkCancellation;
+import scheduler.reservation.Reservation;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Appointments kept in a concurrent map by id, and per user in (time, id) order for show_appointments.
+ *
+ * reserve and cancel hold the lock of the appointment's day in MemoryAvailabilityRepository while they
+ * change availability, doses and appointments, so a caregiver can never be booked twice for a day and a
+ * cancelled appointment gives back its caregiver and dose exactly once. Doses are taken with an atomic
+ * decrement that fails at zero, so vaccines are never oversold even across days.
+ *
+ * As one of several shards it numbers its appointments like IdAllocator does, n * shards + shard.
+ */
+public class MemoryAppointmentRepository implements AppointmentRepository {
+
+    private final MemoryAvailabilityRepository availability;
+    private final MemoryVaccineRepository vaccines;
+
+    private static final Comparator<Appointment> ORDER =
+            Comparator.comparing(Appointment::getTime).thenComparingInt(Appointment::getId);
+
+    private final AtomicInteger ids = new AtomicInteger();
+    private final int shard;
+    private final int shards;
+    private final Map<Integer, Appointment> appointments = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Appointment>> byPatient = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Appointment>> byCaregiver = new ConcurrentHashMap<>();
+
+    public MemoryAppointmentRepository(MemoryAvailabilityRepository availability, MemoryVaccineRepository vaccines) {
+        this(availability, vaccines, 0, 1);
+    }
+
+    public MemoryAppointmentRepository(MemoryAvailabilityRepository availability, MemoryVaccineRepository vaccines,
+                                       int shard, int shards) {
+        this.availability = availability;
+        this.vaccines = vaccines;
+        this.shard = shard;
+        this.shards = shards;
+    }
+
+    @Override
+    public Reservation reserve(String patient, Date date, String vaccine) {
+        Appointment appointment;
+        ReentrantLock lock = availability.lock(date);
+        lock.lock();
+        try {
+            String caregiver = availability.pollFirst(date);
+            if (caregiver == null) {
+                return Reservation.rejected(Reservation.Status.NO_CAREGIVER);
+            }
+            String vaccineName = vaccines.take(vaccine);
+            if (vaccineName == null) {
+                availability.put(date, caregiver);
+                return Reservation.rejected(vaccines.findDoses(vaccine) != null ?
+                        Reservation.Status.NO_DOSES : Reservation.Status.UNKNOWN_VACCINE);
+            }
+            appointment = new Appointment(ids.incrementAndGet() * shards + shard, patient, caregiver, vaccineName, date);
+            appointments.put(appointment.getId(), appointment);
+            appointments(byPatient, patient).add(appointment);
+            appointments(byCaregiver, caregiver).add(appointment);
+        } finally {
+            lock.unlock();
+        }
+        VaccineCache.getInstance().adjust(appointment.getVaccineName(), -1);
+        return Reservation.confirmed(appointment.getId(), appointment.getCaregiver());
+    }
+
+    @Override
+    public Appointment find(int id) {
+        return appointments.get(id);
+    }
+
+    @Override
+    public boolean cancel(Appointment appointment) {
+        ReentrantLock lock = availability.lock(appointment.getTime());
+        lock.lock();
+        try {
+            if (!appointments.remove(appointment.getId(), appointment)) {
+                return false;
+            }
+            appointments(byPatient, appointment.getPatient()).remove(appointment);
+            appointments(byCaregiver, appointment.getCaregiver()).remove(appointment);
+            vaccines.increase(appointment.getVaccineName(), 1);
+            availability.put(appointment.getTime(), appointment.getCaregiver());
+        } finally {
+            lock.unlock();
+        }
+        VaccineCache.getInstance().adjust(appointment.getVaccineName(), 1);
+        return true;
+    }
+
+    // each day's appointments are cancelled under the day's lock, the days one after another
+    @Override
+    public int cancelAll(BulkCancellation cancellation, Consumer<Appointment> cancelled) {
+        Collection<Appointment> candidates = appointments.values();
+        if (cancellation.getCaregiver() != null) {
+            candidates = byCaregiver.getOrDefault(MemoryAccountRepository.key(cancellation.getCaregiver()),
+                    new ConcurrentSkipListSet<>(ORDER));
+        }
+        Map<Date, List<Appointment>> byDay = new TreeMap<>();
+        for (Appointment appointment : candidates) {
+            if (!appointment.getTime().before(cancellation.getFrom()) &&
+                    !appointment.getTime().after(cancellation.getTo()) && (cancellation.getVaccine() == null ||
+                    cancellation.getVaccine().equalsIgnoreCase(appointment.getVaccineName()))) {
+                byDay.computeIfAbsent(appointment.getTime(), day -> new ArrayList<>()).add(appointment);
+            }
+        }
+
+        List<Appointment> done = new ArrayList<>();
+        for (Map.Entry<Date, List<Appointment>> day : byDay.entrySet()) {
+            ReentrantLock lock = availability.lock(day.getKey());
+            lock.lock();
+            try {
+                for (Appointment appointment : day.getValue()) {
+                    if (!appointments.remove(appointment.getId(), appointment)) {
+                        continue;
+                    }
+                    appointments(byPatient, appointment.getPatient()).remove(appointment);
+                    appointments(byCaregiver, appointment.getCaregiver()).remove(appointment);
+                    if (cancellation.isRefund()) {
+                        vaccines.increase(appointment.getVaccineName(), 1);
+                    }
+                    if (cancellation.isRelease()) {
+                        availability.put(appointment.getTime(), appointment.getCaregiver());
+                    }
+                    done.add(appointment);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (cancellation.isWithdraw()) {
+            LocalDate last = cancellation.getTo().toLocalDate();
+            for (LocalDate day = cancellation.getFrom().toLocalDate(); !day.isAfter(last); day = day.plusDays(1)) {
+                Date date = Date.valueOf(day);
+                ReentrantLock lock = availability.lock(date);
+                lock.lock();
+                try {
+                    availability.remove(date, cancellation.getCaregiver());
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        done.sort(Comparator.comparing(Appointment::getPatient, String.CASE_INSENSITIVE_ORDER).thenComparing(ORDER));
+        for (Appointment appointment : done) {
+            if (cancellation.isRefund()) {
+                VaccineCache.getInstance().adjust(appointment.getVaccineName(), 1);
+            }
+            cancelled.accept(appointment);
+        }
+        return done.size();
+    }
+
+    @Override
+    public int scan(AppointmentQuery query, Consumer<Appointment> action) {
+        NavigableSet<Appointment> appointments = (query.isCaregiver() ? byCaregiver : byPatient)
+                .get(MemoryAccountRepository.key(query.getUsername()));
+        if (appointments == null) {
+            return 0;
+        }
+        int count = 0;
+        Appointment start = new Appointment(Integer.MIN_VALUE, null, null, null, query.getLowerBound());
+        for (Appointment appointment : appointments.tailSet(start, true)) {
+            if (count == query.getLimit() || appointment.getTime().after(query.getTo())) {
+                break;
+            }
+            if (query.isAfterCursor(appointment)) {
+                action.accept(appointment);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static NavigableSet<Appointment> appointments(Map<String, NavigableSet<Appointment>> byUser,
+                                                          String username) {
+        return byUser.computeIfAbsent(MemoryAccountRepository.key(username),
+                key -> new ConcurrentSkipListSet<>(ORDER));
+    }
+}
@@ -0,0 +1,145 @@
+package scheduler.repository.memory;
+
+import scheduler.repository.AccountRepository;
+import scheduler.repository.AvailabilityRepository;
+import scheduler.repository.AvailabilitySummary;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Availability kept as a sorted set of caregivers per day.
+ *
+ * Days are keyed by their epoch day, and each day is guarded by one of a fixed number of striped locks, so
+ * writers on different days rarely wait for each other. The reservation and cancellation code of
+ * MemoryAppointmentRepository holds a day's lock for its whole operation, which makes them atomic with
+ * respect to everything else that touches that day.
+ */
+public class MemoryAvailabilityRepository implements AvailabilityRepository {
+
+    private static final int STRIPES = 64;
+
+    private final AccountRepository caregivers;
+    private final Map<Long, NavigableSet<String>> days = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    public MemoryAvailabilityRepository(AccountRepository caregivers) {
+        this.caregivers = caregivers;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public void add(Date date, String caregiver) throws SQLException {
+        if (!caregivers.exists(caregiver)) {
+            throw new SQLException("Unknown caregiver: " + caregiver);
+        }
+        ReentrantLock lock = lock(date);
+        lock.lock();
+        try {
+            if (!put(date, caregiver)) {
+                throw new SQLException(caregiver + " is already available on " + date);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Map.Entry<String, Date>> addMissing(Map<String, List<Date>> datesByCaregiver) throws SQLException {
+        List<Map.Entry<String, Date>> inserted = new ArrayList<>();
+        for (Map.Entry<String, List<Date>> entry : datesByCaregiver.entrySet()) {
+            if (!caregivers.exists(entry.getKey())) {
+                continue;
+            }
+            for (Date d : entry.getValue()) {
+                ReentrantLock lock = lock(d);
+                lock.lock();
+                try {
+                    if (put(d, entry.getKey())) {
+                        inserted.add(new AbstractMap.SimpleEntry<>(entry.getKey(), d));
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        return inserted;
+    }
+
+    @Override
+    public List<String> caregivers(Date date) {
+        ReentrantLock lock = lock(date);
+        lock.lock();
+        try {
+            NavigableSet<String> available = days.get(epochDay(date));
+            return available == null ? new ArrayList<>() : new ArrayList<>(available);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<AvailabilitySummary> summarize(Date start, Date end, int names) {
+        List<AvailabilitySummary> summaries = new ArrayList<>();
+        for (long day = epochDay(start); day <= epochDay(end); day++) {
+            Date date = Date.valueOf(LocalDate.ofEpochDay(day));
+            ReentrantLock lock = lock(date);
+            lock.lock();
+            try {
+                NavigableSet<String> available = days.get(day);
+                if (available == null || available.isEmpty()) {
+                    continue;
+                }
+                List<String> first = new ArrayList<>(Math.min(names, available.size()));
+                for (String caregiver : available) {
+                    if (first.size() == names) {
+                        break;
+                    }
+                    first.add(caregiver);
+                }
+                summaries.add(new AvailabilitySummary(date, available.size(), first));
+            } finally {
+                lock.unlock();
+            }
+        }
+        return summaries;
+    }
+
+    // the lock guarding the date, callers of the methods below must hold it
+    ReentrantLock lock(Date date) {
+        return locks[(int) Math.floorMod(epochDay(date), (long) STRIPES)];
+    }
+
+    // removes and returns the first available caregiver in username order, or null if there is none
+    String pollFirst(Date date) {
+        NavigableSet<String> available = days.get(epochDay(date));
+        return available == null ? null : available.pollFirst();
+    }
+
+    // returns false if the caregiver was already available on the date
+    boolean put(Date date, String caregiver) {
+        return days.computeIfAbsent(epochDay(date), day -> new TreeSet<>(String.CASE_INSENSITIVE_ORDER))
+                .add(caregiver);
+    }
+
+    // returns false if the caregiver was not available on the date
+    boolean remove(Date date, String caregiver) {
+        NavigableSet<String> available = days.get(epochDay(date));
+        return available != null && available.remove(caregiver);
+    }
+
+    private static long epochDay(Date date) {
+        return date.toLocalDate().toEpochDay();
+    }
+}
@@ -0,0 +1,85 @@
+package scheduler.repository.memory;
+
+import scheduler.repository.VaccineRepository;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Vaccines kept in a concurrent map keyed by lower-cased name. Dose counts are atomic counters, so dose
+ * changes never take a lock.
+ */
+public class MemoryVaccineRepository implements VaccineRepository {
+
+    private final Map<String, Stock> stocks = new ConcurrentHashMap<>();
+
+    @Override
+    public Integer findDoses(String vaccineName) {
+        Stock stock = stocks.get(MemoryAccountRepository.key(vaccineName));
+        return stock == null ? null : stock.doses.get();
+    }
+
+    @Override
+    public Map<String, Integer> findAll() {
+        Map<String, Integer> doses = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Stock stock : stocks.values()) {
+            doses.put(stock.name, stock.doses.get());
+        }
+        return doses;
+    }
+
+    @Override
+    public void create(String vaccineName, int doses) throws SQLException {
+        if (stocks.putIfAbsent(MemoryAccountRepository.key(vaccineName), new Stock(vaccineName, doses)) != null) {
+            throw new SQLException("Vaccine already exists: " + vaccineName);
+        }
+    }
+
+    @Override
+    public Integer increase(String vaccineName, int num) {
+        Stock stock = stocks.get(MemoryAccountRepository.key(vaccineName));
+        return stock == null ? null : stock.doses.addAndGet(num);
+    }
+
+    @Override
+    public Integer decrease(String vaccineName, int num) {
+        Stock stock = stocks.get(MemoryAccountRepository.key(vaccineName));
+        if (stock == null) {
+            return null;
+        }
+        int current;
+        do {
+            current = stock.doses.get();
+            if (current < num) {
+                return null;
+            }
+        } while (!stock.doses.compareAndSet(current, current - num));
+        return current - num;
+    }
+
+    @Override
+    public void addAll(Map<String, Integer> dosesByVaccine) {
+        for (Map.Entry<String, Integer> entry : dosesByVaccine.entrySet()) {
+            stocks.computeIfAbsent(MemoryAccountRepository.key(entry.getKey()), key -> new Stock(entry.getKey(), 0))
+                    .doses.addAndGet(entry.getValue());
+        }
+    }
+
+    // takes one dose and returns the vaccine's stored name, or null if there is no dose left
+    String take(String vaccineName) {
+        return decrease(vaccineName, 1) == null ? null : stocks.get(MemoryAccountRepository.key(vaccineName)).name;
+    }
+
+    private static class Stock {
+        private final String name;
+        private final AtomicInteger doses;
+
+        private Stock(String name, int doses) {
+            this.name = name;
+            this.doses = new AtomicInteger(doses);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package scheduler.repository.shard;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which of several databases (shards) holds the availabilities and appointments of a date.
+ *
+ * Sharding is off unless the Shards environment variable is set to 2 or more. Dates are spread over the
+ * shards by a hash of the date (ShardBy=hash, the default), or by date range (ShardBy=range), where
+ * ShardRanges lists the first date of every shard but the first in ascending order, e.g.
+ * ShardRanges=2022-01-01,2023-01-01 for three shards. Shard i is the database at the JDBC URL in
+ * Shard{i}Url, counting from 0, with the same credentials as the main database; the in-memory backend keeps
+ * one in-memory store per shard instead. Accounts and vaccines stay on the main database.
+ *
+ * Appointment ids are numbered per shard as n * shards + shard, so an id alone tells its shard. Queries
+ * that span shards run on all of them in parallel.
+ */
+public class ShardRouter {
+
+    private static final ShardRouter instance = create();
+
+    private final int shards;
+    // the first day of shards 1 to n - 1 with range partitioning, null with hash partitioning
+    private final long[] starts;
+    private final ExecutorService executor;
+
+    private final AtomicLong routed = new AtomicLong();
+    private final AtomicLong gathered = new AtomicLong();
+
+    public interface ShardQuery<T> {
+        T run(int shard) throws SQLException;
+    }
+
+    private ShardRouter(int shards, long[] starts) {
+        this.shards = shards;
+        this.starts = starts;
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "shard-query");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static ShardRouter create() {
+        String setting = System.getenv("Shards");
+        if (setting == null || setting.isEmpty()) {
+            return null;
+        }
+        int shards;
+        try {
+            shards = Integer.parseInt(setting.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid value for Shards: " + setting);
+        }
+        if (shards < 2) {
+            return null;
+        }
+
+        long[] starts = null;
+        if ("range".equalsIgnoreCase(System.getenv("ShardBy"))) {
+            starts = parseStarts(System.getenv("ShardRanges"), shards);
+        }
+        return new ShardRouter(shards, starts);
+    }
+
+    private static long[] parseStarts(String setting, int shards) {
+        String[] dates = setting == null || setting.isEmpty() ? new String[0] : setting.split(",");
+        if (dates.length != shards - 1) {
+            throw new IllegalStateException("ShardRanges needs " + (shards - 1) + " dates for " + shards +
+                    " shards: " + setting);
+        }
+        long[] starts = new long[dates.length];
+        for (int i = 0; i < dates.length; i++) {
+            try {
+                starts[i] = LocalDate.parse(dates[i].trim()).toEpochDay();
+            } catch (DateTimeParseException e) {
+                throw new IllegalStateException("Invalid date in ShardRanges: " + dates[i]);
+            }
+            if (i > 0 && starts[i] <= starts[i - 1]) {
+                throw new IllegalStateException("ShardRanges has to be in ascending order: " + setting);
+            }
+        }
+        return starts;
+    }
+
+    // returns null when sharding is off
+    public static ShardRouter getInstance() {
+        return instance;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    // whether each shard holds one range of consecutive dates, in shard order
+    public boolean isRangePartitioned() {
+        return starts != null;
+    }
+
+    // the JDBC URL of a shard's database; a process that ignored a shard would put rows where others do not look
+    public String getUrl(int shard) {
+        String url = System.getenv("Shard" + shard + "Url");
+        if (url == null || url.isEmpty()) {
+            throw new IllegalStateException("Shard" + shard + "Url is not set for shard " + shard + " of " + shards);
+        }
+        return url;
+    }
+
+    public int shardOf(Date date) {
+        routed.incrementAndGet();
+        return shardOf(date.toLocalDate().toEpochDay());
+    }
+
+    public int shardOf(int appointmentId) {
+        routed.incrementAndGet();
+        return Math.floorMod(appointmentId, shards);
+    }
+
+    private int shardOf(long day) {
+        if (starts == null) {
+            // neighbouring days, and days of the same weekday, land on unrelated shards
+            long mixed = day * 0x9E3779B97F4A7C15L;
+            return (int) Math.floorMod(mixed ^ (mixed >>> 32), (long) shards);
+        }
+        int found = Arrays.binarySearch(starts, day);
+        return found >= 0 ? found + 1 : -found - 1;
+    }
+
+    // the shards that can hold dates from start to end (inclusive)
+    public List<Integer> shardsBetween(Date start, Date end) {
+        List<Integer> between = new ArrayList<>();
+        if (starts == null) {
+            for (int i = 0; i < shards; i++) {
+                between.add(i);
+            }
+        } else {
+            int last = shardOf(end.toLocalDate().toEpochDay());
+            for (int i = shardOf(start.toLocalDate().toEpochDay()); i <= last; i++) {
+                between.add(i);
+            }
+        }
+        return between;
+    }
+
+    /**
+     * Runs the query on every given shard in parallel and returns the results in the order of the shards.
+     * If any shard fails, its exception is thrown once all of them finished.
+     */
+    public <T> List<T> gather(List<Integer> on, ShardQuery<T> query) throws SQLException {
+        if (on.size() == 1) {
+            routed.incrementAndGet();
+            return List.of(query.run(on.get(0)));
+        }
+        gathered.incrementAndGet();
+        List<Future<T>> futures = new ArrayList<>();
+        for (int shard : on) {
+            futures.add(executor.submit(() -> query.run(shard)));
+        }
+        List<T> results = new ArrayList<>();
+        SQLException failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for the shards");
+            } catch (ExecutionException e) {
+                SQLException cause = e.getCause() instanceof SQLException ?
+                        (SQLException) e.getCause() : new SQLException(e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    public String describe() {
+        return String.format("shards: %d by date %s, %d routed to one shard, %d gathered from several", shards,
+                starts == null ? "hash" : "range", routed.get(), gathered.get());
+    }
+}
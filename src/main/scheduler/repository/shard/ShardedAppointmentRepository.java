@@ -0,0 +1,108 @@
+package scheduler.repository.shard;
+
+import scheduler.model.Appointment;
+import scheduler.repository.AppointmentQuery;
+import scheduler.repository.AppointmentRepository;
+import scheduler.repository.BulkCancellation;
+import scheduler.reservation.Reservation;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Appointments spread over the shards by date, one repository per shard. A reservation is made on the shard
+ * of its date and an appointment is found and cancelled on the shard its id names.
+ *
+ * A user's appointments can be on every shard. With hash partitioning all shards are asked for the page in
+ * parallel and their pages are merged in (time, id) order; with range partitioning the shards hold
+ * consecutive date ranges, so they are read one after another until the page is full.
+ *
+ * A bulk cancellation runs on every shard its dates can be on, in parallel, and is all or nothing per shard.
+ */
+public class ShardedAppointmentRepository implements AppointmentRepository {
+
+    private static final Comparator<Appointment> ORDER =
+            Comparator.comparing(Appointment::getTime).thenComparingInt(Appointment::getId);
+
+    private final ShardRouter router;
+    private final List<AppointmentRepository> shards;
+
+    public ShardedAppointmentRepository(ShardRouter router, List<AppointmentRepository> shards) {
+        this.router = router;
+        this.shards = shards;
+    }
+
+    @Override
+    public Reservation reserve(String patient, Date date, String vaccine) throws SQLException {
+        return shards.get(router.shardOf(date)).reserve(patient, date, vaccine);
+    }
+
+    @Override
+    public Appointment find(int id) throws SQLException {
+        return shards.get(router.shardOf(id)).find(id);
+    }
+
+    @Override
+    public boolean cancel(Appointment appointment) throws SQLException {
+        return shards.get(router.shardOf(appointment.getId())).cancel(appointment);
+    }
+
+    @Override
+    public int cancelAll(BulkCancellation cancellation, Consumer<Appointment> cancelled) throws SQLException {
+        List<Appointment> merged = new ArrayList<>();
+        for (List<Appointment> done : router.gather(router.shardsBetween(cancellation.getFrom(),
+                cancellation.getTo()), shard -> {
+            List<Appointment> found = new ArrayList<>();
+            shards.get(shard).cancelAll(cancellation, found::add);
+            return found;
+        })) {
+            merged.addAll(done);
+        }
+        merged.sort(Comparator.comparing(Appointment::getPatient, String.CASE_INSENSITIVE_ORDER).thenComparing(ORDER));
+        merged.forEach(cancelled);
+        return merged.size();
+    }
+
+    @Override
+    public int scan(AppointmentQuery query, Consumer<Appointment> action) throws SQLException {
+        List<Integer> on = router.shardsBetween(query.getLowerBound(), query.getTo());
+        if (router.isRangePartitioned()) {
+            int count = 0;
+            for (int shard : on) {
+                if (count == query.getLimit()) {
+                    break;
+                }
+                count += shards.get(shard).scan(withLimit(query, query.getLimit() - count), action);
+            }
+            return count;
+        }
+
+        // every shard's page is sorted, at most limit of their union can be on the merged page
+        List<Appointment> merged = new ArrayList<>();
+        for (List<Appointment> page : router.gather(on, shard -> {
+            List<Appointment> found = new ArrayList<>();
+            shards.get(shard).scan(query, found::add);
+            return found;
+        })) {
+            merged.addAll(page);
+        }
+        merged.sort(ORDER);
+        int count = Math.min(merged.size(), query.getLimit());
+        for (Appointment appointment : merged.subList(0, count)) {
+            action.accept(appointment);
+        }
+        return count;
+    }
+
+    private static AppointmentQuery withLimit(AppointmentQuery query, int limit) {
+        return new AppointmentQuery.AppointmentQueryBuilder(query.getUsername(), query.isCaregiver())
+                .between(query.getFrom(), query.getTo())
+                .after(query.getAfterTime(), query.getAfterId())
+                .limit(limit)
+                .build();
+    }
+}
@@ -0,0 +1,82 @@
+package scheduler.repository.shard;
+
+import scheduler.repository.AccountRepository;
+import scheduler.repository.AvailabilityRepository;
+import scheduler.repository.AvailabilitySummary;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Availability spread over the shards by date, one repository per shard.
+ *
+ * The caregivers are on the main database, so addMissing checks there which of them exist before it hands the
+ * dates to the shards.
+ *
+ * addMissing is all or nothing per shard only: the shards are separate databases, so a failure on one shard
+ * leaves the rows already committed on the others. Adding them again skips those rows.
+ */
+public class ShardedAvailabilityRepository implements AvailabilityRepository {
+
+    private final ShardRouter router;
+    private final List<AvailabilityRepository> shards;
+    private final AccountRepository caregivers;
+
+    public ShardedAvailabilityRepository(ShardRouter router, List<AvailabilityRepository> shards,
+                                         AccountRepository caregivers) {
+        this.router = router;
+        this.shards = shards;
+        this.caregivers = caregivers;
+    }
+
+    @Override
+    public void add(Date date, String caregiver) throws SQLException {
+        shards.get(router.shardOf(date)).add(date, caregiver);
+    }
+
+    @Override
+    public List<Map.Entry<String, Date>> addMissing(Map<String, List<Date>> datesByCaregiver) throws SQLException {
+        Map<Integer, Map<String, List<Date>>> byShard = new TreeMap<>();
+        for (Map.Entry<String, List<Date>> entry : datesByCaregiver.entrySet()) {
+            if (!caregivers.exists(entry.getKey())) {
+                continue;
+            }
+            for (Date date : entry.getValue()) {
+                byShard.computeIfAbsent(router.shardOf(date), shard -> new LinkedHashMap<>())
+                        .computeIfAbsent(entry.getKey(), caregiver -> new ArrayList<>()).add(date);
+            }
+        }
+        if (byShard.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Map.Entry<String, Date>> inserted = new ArrayList<>();
+        for (List<Map.Entry<String, Date>> added : router.gather(new ArrayList<>(byShard.keySet()),
+                shard -> shards.get(shard).addMissing(byShard.get(shard)))) {
+            inserted.addAll(added);
+        }
+        return inserted;
+    }
+
+    @Override
+    public List<String> caregivers(Date date) throws SQLException {
+        return shards.get(router.shardOf(date)).caregivers(date);
+    }
+
+    // every date is on one shard, so the shards' summaries only need to be put in date order
+    @Override
+    public List<AvailabilitySummary> summarize(Date start, Date end, int names) throws SQLException {
+        List<AvailabilitySummary> summaries = new ArrayList<>();
+        for (List<AvailabilitySummary> summarized : router.gather(router.shardsBetween(start, end),
+                shard -> shards.get(shard).summarize(start, end, names))) {
+            summaries.addAll(summarized);
+        }
+        summaries.sort(Comparator.comparing(AvailabilitySummary::getDate));
+        return summaries;
+    }
+}
@@ -0,0 +1,60 @@
+package scheduler.reservation;
+
+/**
+ * The outcome of a reservation attempt. Only a CONFIRMED reservation carries an appointment id and caregiver.
+ */
+public class Reservation {
+
+    public enum Status {
+        CONFIRMED,
+        NO_CAREGIVER,
+        NO_DOSES,
+        UNKNOWN_VACCINE
+    }
+
+    private final Status status;
+    private final int appointmentId;
+    private final String caregiver;
+
+    private Reservation(Status status, int appointmentId, String caregiver) {
+        this.status = status;
+        this.appointmentId = appointmentId;
+        this.caregiver = caregiver;
+    }
+
+    public static Reservation confirmed(int appointmentId, String caregiver) {
+        return new Reservation(Status.CONFIRMED, appointmentId, caregiver);
+    }
+
+    public static Reservation rejected(Status status) {
+        if (status == Status.CONFIRMED) {
+            throw new IllegalArgumentException("A rejection needs a failure status");
+        }
+        return new Reservation(status, -1, null);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isConfirmed() {
+        return status == Status.CONFIRMED;
+    }
+
+    public int getAppointmentId() {
+        return appointmentId;
+    }
+
+    public String getCaregiver() {
+        return caregiver;
+    }
+
+    @Override
+    public String toString() {
+        return "Reservation{" +
+                "status=" + status +
+                ", appointmentId=" + appointmentId +
+                ", caregiver='" + caregiver + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,338 @@
+package scheduler.reservation;
+
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.VaccineCache;
+import scheduler.db.Concurrency;
+import scheduler.db.ConnectionManager;
+import scheduler.db.IdAllocator;
+import scheduler.db.NamedStatement;
+import scheduler.repository.Repositories;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects concurrent reservations and books them together in one transaction (group commit).
+ *
+ * Batching is off unless the ReserveBatchMillis environment variable is set. While it is on, reserve queues
+ * its request and waits; a single thread takes the requests in arrival order until ReserveBatchSize (64 by
+ * default) are queued or ReserveBatchMillis have passed since the first one. For every date in the batch it
+ * claims as many availability rows as there are requests for that date, and for every vaccine as many doses
+ * as there are requests for it, one statement each. The requests are then served first come, first served:
+ * a request gets a caregiver and a dose only if both are left. Caregivers and doses nobody got are put back,
+ * and the appointments are inserted, all before the single commit. Dates and vaccines are claimed in sorted
+ * order, so concurrent batches of several processes lock rows in the same order.
+ *
+ * A batch claims doses with one relative update per vaccine, which is the atomic Concurrency strategy. Under
+ * the optimistic and pessimistic strategies batching is off, and reserve books each request on its own
+ * through the versioned update the strategy asks for.
+ */
+public class ReservationBatcher {
+
+    // SQL Server reports a deadlock victim with this error code; the transaction is safe to retry
+    private static final int DEADLOCK_ERROR = 1205;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final ReservationBatcher instance = create();
+
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final IdAllocator ids = IdAllocator.appointmentIds();
+    private final long windowNanos;
+    private final int maxSize;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+
+    private ReservationBatcher(long windowMillis, int maxSize) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxSize = maxSize;
+        Thread batcher = new Thread(this::run, "reservation-batcher");
+        batcher.setDaemon(true);
+        batcher.start();
+    }
+
+    private static ReservationBatcher create() {
+        String setting = System.getenv("ReserveBatchMillis");
+        // in-memory reservations do not contend on database rows, and batches are not split over shards
+        if (setting == null || setting.isEmpty() || Repositories.isInMemory() || Repositories.isSharded()) {
+            return null;
+        }
+        if (Concurrency.isVersioned()) {
+            System.out.println("Reservation batching needs the atomic concurrency strategy, " +
+                    "ignoring ReserveBatchMillis");
+            return null;
+        }
+        long windowMillis = Long.parseLong(setting.trim());
+        int maxSize = ConnectionManager.intSetting("ReserveBatchSize", 64);
+        return windowMillis > 0 && maxSize > 1 ? new ReservationBatcher(windowMillis, maxSize) : null;
+    }
+
+    // returns null when batching is disabled, also after the strategy was switched to a versioned one
+    public static ReservationBatcher getInstance() {
+        return Concurrency.isVersioned() ? null : instance;
+    }
+
+    // queues the reservation and waits until its batch has been committed or rolled back
+    public Reservation reserve(String patient, Date date, String vaccine) throws SQLException {
+        Request request = new Request(patient, date, vaccine);
+        queue.add(request);
+        try {
+            return request.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the reservation");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        }
+    }
+
+    public String describe() {
+        long count = batches.get();
+        return String.format("reservation batches: %d batches, %d reservations, %.1f per batch", count,
+                requests.get(), count == 0 ? 0.0 : (double) requests.get() / count);
+    }
+
+    private void run() {
+        while (true) {
+            List<Request> batch;
+            try {
+                batch = collect();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                List<Reservation> results = reserveWithRetry(batch);
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).result.complete(results.get(i));
+                }
+            } catch (SQLException | RuntimeException e) {
+                for (Request request : batch) {
+                    request.result.completeExceptionally(e);
+                }
+            }
+            batches.incrementAndGet();
+            requests.addAndGet(batch.size());
+        }
+    }
+
+    // waits for the first request, then takes more until the window closes or the batch is full
+    private List<Request> collect() throws InterruptedException {
+        List<Request> batch = new ArrayList<>();
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxSize) {
+            long left = deadline - System.nanoTime();
+            Request next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private List<Reservation> reserveWithRetry(List<Request> batch) throws SQLException {
+        // taken before a connection is borrowed, leasing a new block of ids needs a connection of its own; the
+        // ids of rejected requests are left as gaps
+        int[] batchIds = new int[batch.size()];
+        for (int i = 0; i < batchIds.length; i++) {
+            batchIds[i] = ids.next();
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return reserveAll(batch, batchIds);
+            } catch (SQLException e) {
+                if (e.getErrorCode() != DEADLOCK_ERROR || attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private List<Reservation> reserveAll(List<Request> batch, int[] batchIds) throws SQLException {
+        // how many requests want each date and each vaccine, in the order the rows get locked
+        Map<Long, Integer> dateDemand = new TreeMap<>();
+        Map<String, Integer> vaccineDemand = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Request request : batch) {
+            dateDemand.merge(request.day, 1, Integer::sum);
+            vaccineDemand.merge(request.vaccine, 1, Integer::sum);
+        }
+
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+        List<Reservation> results = new ArrayList<>();
+        Map<Long, Deque<String>> caregivers = new TreeMap<>();
+        Map<String, Dose> doses = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        try {
+            con.setAutoCommit(false);
+            con.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+
+            PreparedStatement claim = cm.prepareStatement(NamedStatement.CLAIM_AVAILABILITIES);
+            for (Map.Entry<Long, Integer> demand : dateDemand.entrySet()) {
+                claim.setInt(1, demand.getValue());
+                claim.setDate(2, toDate(demand.getKey()));
+                ResultSet claimed = claim.executeQuery();
+                List<String> usernames = new ArrayList<>();
+                while (claimed.next()) {
+                    usernames.add(claimed.getString("Username"));
+                }
+                // the rows come back in no particular order, hand them out in username order
+                Collections.sort(usernames);
+                caregivers.put(demand.getKey(), new ArrayDeque<>(usernames));
+            }
+
+            PreparedStatement take = cm.prepareStatement(NamedStatement.TAKE_DOSES);
+            for (Map.Entry<String, Integer> demand : vaccineDemand.entrySet()) {
+                take.setInt(1, demand.getValue());
+                take.setInt(2, demand.getValue());
+                take.setString(3, demand.getKey());
+                ResultSet taken = take.executeQuery();
+                if (taken.next()) {
+                    doses.put(demand.getKey(), new Dose(taken.getString("Name"), taken.getInt("Taken"), true));
+                } else {
+                    doses.put(demand.getKey(), new Dose(null, 0, vaccineExists(cm, demand.getKey())));
+                }
+            }
+
+            // first come, first served
+            PreparedStatement add = cm.prepareStatement(NamedStatement.ADD_APPOINTMENT);
+            boolean any = false;
+            for (int i = 0; i < batch.size(); i++) {
+                Request request = batch.get(i);
+                Deque<String> available = caregivers.get(request.day);
+                Dose dose = doses.get(request.vaccine);
+                if (available.isEmpty()) {
+                    results.add(Reservation.rejected(Reservation.Status.NO_CAREGIVER));
+                } else if (dose.left == 0) {
+                    results.add(Reservation.rejected(dose.exists ?
+                            Reservation.Status.NO_DOSES : Reservation.Status.UNKNOWN_VACCINE));
+                } else {
+                    String caregiver = available.poll();
+                    dose.left--;
+                    int id = batchIds[i];
+                    add.setInt(1, id);
+                    add.setString(2, request.patient);
+                    add.setString(3, caregiver);
+                    add.setString(4, dose.name);
+                    add.setDate(5, request.date);
+                    add.addBatch();
+                    any = true;
+                    results.add(Reservation.confirmed(id, caregiver));
+                }
+            }
+            if (any) {
+                add.executeBatch();
+            }
+            putBack(cm, caregivers, doses);
+            con.commit();
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            cm.closeConnection();
+        }
+
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        for (int i = 0; i < batch.size(); i++) {
+            Reservation reservation = results.get(i);
+            if (reservation.isConfirmed()) {
+                if (index != null) {
+                    index.remove(batch.get(i).date, reservation.getCaregiver());
+                }
+                VaccineCache.getInstance().adjust(doses.get(batch.get(i).vaccine).name, -1);
+            }
+        }
+        return results;
+    }
+
+    // returns the caregivers and doses that were claimed but not handed out, in the same transaction
+    private static void putBack(ConnectionManager cm, Map<Long, Deque<String>> caregivers, Map<String, Dose> doses)
+            throws SQLException {
+        PreparedStatement release = cm.prepareStatement(NamedStatement.ADD_AVAILABILITY);
+        boolean any = false;
+        for (Map.Entry<Long, Deque<String>> left : caregivers.entrySet()) {
+            for (String caregiver : left.getValue()) {
+                release.setDate(1, toDate(left.getKey()));
+                release.setString(2, caregiver);
+                release.addBatch();
+                any = true;
+            }
+        }
+        if (any) {
+            release.executeBatch();
+        }
+        PreparedStatement refund = cm.prepareStatement(NamedStatement.ADJUST_DOSES);
+        any = false;
+        for (Dose dose : doses.values()) {
+            if (dose.left > 0) {
+                refund.setInt(1, dose.left);
+                refund.setString(2, dose.name);
+                refund.addBatch();
+                any = true;
+            }
+        }
+        if (any) {
+            refund.executeBatch();
+        }
+    }
+
+    private static boolean vaccineExists(ConnectionManager cm, String vaccine) throws SQLException {
+        PreparedStatement statement = cm.prepareStatement(NamedStatement.VACCINE_EXISTS);
+        statement.setString(1, vaccine);
+        return statement.executeQuery().next();
+    }
+
+    private static Date toDate(long day) {
+        return Date.valueOf(LocalDate.ofEpochDay(day));
+    }
+
+    private static class Request {
+        private final String patient;
+        private final Date date;
+        private final long day;
+        private final String vaccine;
+        private final CompletableFuture<Reservation> result = new CompletableFuture<>();
+
+        private Request(String patient, Date date, String vaccine) {
+            this.patient = patient;
+            this.date = date;
+            this.day = date.toLocalDate().toEpochDay();
+            this.vaccine = vaccine;
+        }
+    }
+
+    // the doses taken for one vaccine and how many of them are not handed out yet
+    private static class Dose {
+        private final String name;
+        private final boolean exists;
+        private int left;
+
+        private Dose(String name, int left, boolean exists) {
+            this.name = name;
+            this.left = left;
+            this.exists = exists;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package scheduler.reservation;
+
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.VaccineCache;
+import scheduler.db.Concurrency;
+import scheduler.db.ConnectionManager;
+import scheduler.db.ConnectionPool;
+import scheduler.db.IdAllocator;
+import scheduler.db.NamedStatement;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Books an appointment in a single transaction on a single connection.
+ *
+ * The availability row is claimed with a conditional DELETE that skips rows already locked by other
+ * reservers (READPAST), and the dose is taken with a decrement that only succeeds while Doses > 0.
+ * Either both succeed and the Appointment row is inserted, or the transaction is rolled back and the
+ * caller gets an explicit rejection, so a caregiver can never be booked twice for the same date and a
+ * vaccine can never be oversold. With a versioned Concurrency strategy the dose is taken with a read and a
+ * compare-and-set (or locked read) instead, and a conflict retries the whole reservation.
+ *
+ * An engine for a shard claims the availability row and inserts the appointment on the shard, while the
+ * doses stay on the main database. The dose is then taken in a transaction of its own on the main database
+ * while the shard transaction holds the claimed row, and given back if the shard transaction fails after
+ * that. A failed give-back leaves a dose unused, it never oversells.
+ */
+public class ReservationEngine {
+
+    // SQL Server reports a deadlock victim with this error code; the transaction is safe to retry
+    private static final int DEADLOCK_ERROR = 1205;
+    private static final int MAX_ATTEMPTS = 3;
+
+    // the shard's pool, null if everything is on the main database
+    private final ConnectionPool pool;
+    private final IdAllocator ids;
+
+    public ReservationEngine() {
+        this(null, IdAllocator.appointmentIds());
+    }
+
+    public ReservationEngine(ConnectionPool shardPool, IdAllocator ids) {
+        this.pool = shardPool;
+        this.ids = ids;
+    }
+
+    public Reservation reserve(String patient, Date date, String vaccine) throws SQLException {
+        // with a loaded availability index the caregiver is picked without asking the database; without a hint
+        // the database decides, the index may not know of availability added elsewhere yet
+        AvailabilityIndex index = AvailabilityIndex.ifLoaded();
+        String hint = index == null ? null : index.firstCaregiver(date);
+        // taken before a connection is borrowed, leasing a new block of ids needs a connection of its own; a
+        // rejected or failed reservation leaves a gap in the ids
+        int id = ids.next();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                String caregiverHint = hint;
+                Reservation reservation = Concurrency.withRetry(() -> tryReserve(id, patient, date, vaccine,
+                        caregiverHint));
+                if (index != null && reservation.isConfirmed()) {
+                    index.remove(date, reservation.getCaregiver());
+                }
+                return reservation;
+            } catch (SQLException e) {
+                if (e.getErrorCode() != DEADLOCK_ERROR || attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private Reservation tryReserve(int id, String patient, Date date, String vaccine, String hint) throws SQLException {
+        ConnectionManager cm = new ConnectionManager(pool);
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+        try {
+            con.setAutoCommit(false);
+            con.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+
+            // claim one availability row for the date
+            String caregiver = hint == null ? null : claim(cm, date, hint);
+            if (caregiver == null) {
+                caregiver = claimAny(cm, date);
+            }
+            if (caregiver == null) {
+                con.rollback();
+                return Reservation.rejected(Reservation.Status.NO_CAREGIVER);
+            }
+
+            // take one dose, only if there is one left
+            Dose dose = pool == null ? takeDose(cm, vaccine) : takeDoseOnMain(vaccine);
+            if (dose.rejection != null) {
+                con.rollback();
+                return Reservation.rejected(dose.rejection);
+            }
+            String vaccineName = dose.name;
+
+            try {
+                PreparedStatement appointmentStatement = cm.prepareStatement(NamedStatement.ADD_APPOINTMENT);
+                appointmentStatement.setInt(1, id);
+                appointmentStatement.setString(2, patient);
+                appointmentStatement.setString(3, caregiver);
+                appointmentStatement.setString(4, vaccineName);
+                appointmentStatement.setDate(5, date);
+                appointmentStatement.executeUpdate();
+
+                con.commit();
+                VaccineCache.getInstance().adjust(vaccineName, -1);
+                return Reservation.confirmed(id, caregiver);
+            } catch (SQLException e) {
+                if (pool != null) {
+                    giveBackOnMain(vaccineName, e);
+                }
+                throw e;
+            }
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // takes a dose inside the caller's transaction
+    private Dose takeDose(ConnectionManager cm, String vaccine) throws SQLException {
+        if (Concurrency.isVersioned()) {
+            Concurrency.Doses doses = Concurrency.changeDoses(cm, vaccine, -1);
+            if (doses == null || !doses.isChanged()) {
+                return new Dose(null, doses == null ?
+                        Reservation.Status.UNKNOWN_VACCINE : Reservation.Status.NO_DOSES);
+            }
+            return new Dose(doses.getName(), null);
+        }
+        PreparedStatement doseStatement = cm.prepareStatement(NamedStatement.TAKE_DOSE);
+        doseStatement.setString(1, vaccine);
+        ResultSet taken = doseStatement.executeQuery();
+        if (!taken.next()) {
+            return new Dose(null, vaccineExists(cm, vaccine) ?
+                    Reservation.Status.NO_DOSES : Reservation.Status.UNKNOWN_VACCINE);
+        }
+        return new Dose(taken.getString("Name"), null);
+    }
+
+    // takes a dose in a transaction of its own on the main database, for engines of a shard
+    private Dose takeDoseOnMain(String vaccine) throws SQLException {
+        ConnectionManager main = new ConnectionManager();
+        Connection con = main.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+        try {
+            con.setAutoCommit(false);
+            Dose dose = takeDose(main, vaccine);
+            con.commit();
+            return dose;
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            main.closeConnection();
+        }
+    }
+
+    private void giveBackOnMain(String vaccineName, SQLException cause) {
+        ConnectionManager main = new ConnectionManager();
+        try {
+            if (main.createConnection() == null) {
+                throw new SQLException("No database connection available");
+            }
+            PreparedStatement refund = main.prepareStatement(NamedStatement.ADJUST_DOSES);
+            refund.setInt(1, 1);
+            refund.setString(2, vaccineName);
+            refund.executeUpdate();
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        } finally {
+            main.closeConnection();
+        }
+    }
+
+    // claims the given caregiver's row, returns null if someone else took it or is taking it right now
+    private String claim(ConnectionManager cm, Date date, String caregiver) throws SQLException {
+        PreparedStatement statement = cm.prepareStatement(NamedStatement.CLAIM_CAREGIVER);
+        statement.setDate(1, date);
+        statement.setString(2, caregiver);
+        ResultSet claimed = statement.executeQuery();
+        return claimed.next() ? claimed.getString("Username") : null;
+    }
+
+    // claims the first free row for the date in username order, returns null if there is none
+    private String claimAny(ConnectionManager cm, Date date) throws SQLException {
+        PreparedStatement statement = cm.prepareStatement(NamedStatement.CLAIM_AVAILABILITY);
+        statement.setDate(1, date);
+        ResultSet claimed = statement.executeQuery();
+        return claimed.next() ? claimed.getString("Username") : null;
+    }
+
+    private boolean vaccineExists(ConnectionManager cm, String vaccine) throws SQLException {
+        PreparedStatement statement = cm.prepareStatement(NamedStatement.VACCINE_EXISTS);
+        statement.setString(1, vaccine);
+        return statement.executeQuery().next();
+    }
+
+    // the vaccine a dose was taken of, or why none was
+    private static class Dose {
+        private final String name;
+        private final Reservation.Status rejection;
+
+        private Dose(String name, Reservation.Status rejection) {
+            this.name = name;
+            this.rejection = rejection;
+        }
+    }
+}
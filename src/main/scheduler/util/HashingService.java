@@ -0,0 +1,128 @@
+package scheduler.util;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Derives and verifies PBKDF2-HMAC-SHA1 password hashes on a dedicated pool of worker threads.
+ *
+ * The pool has one thread per core and a bounded queue. When the queue is full the caller derives the hash
+ * itself, which slows down callers instead of letting a login storm queue up unbounded work. Each thread
+ * keeps its own Mac (and SecretKeyFactory for the rare passwords a Mac cannot take as a key), so no JCE
+ * provider lookup happens per hash.
+ */
+public class HashingService {
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA1";
+    private static final int QUEUE_PER_THREAD = 64;
+
+    private static final HashingService instance = new HashingService(Runtime.getRuntime().availableProcessors());
+
+    private static final ThreadLocal<Mac> macs = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance("HmacSHA1");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException();
+        }
+    });
+    private static final ThreadLocal<SecretKeyFactory> factories = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException();
+        }
+    });
+
+    private final ThreadPoolExecutor workers;
+
+    public HashingService(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUE_PER_THREAD), r -> {
+                    Thread t = new Thread(r, "password-hashing-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public static HashingService getInstance() {
+        return instance;
+    }
+
+    public CompletableFuture<byte[]> deriveAsync(String password, byte[] salt, int iterations, int keyLengthBits) {
+        return CompletableFuture.supplyAsync(() -> derive(password, salt, iterations, keyLengthBits), workers);
+    }
+
+    // checks a password against a stored hash, comparing in constant time
+    public CompletableFuture<Boolean> verifyAsync(String password, byte[] salt, byte[] expectedHash,
+                                                  int iterations, int keyLengthBits) {
+        return deriveAsync(password, salt, iterations, keyLengthBits)
+                .thenApply(hash -> MessageDigest.isEqual(hash, expectedHash));
+    }
+
+    /**
+     * Derives a PBKDF2-HMAC-SHA1 hash on the calling thread. The result is identical to
+     * SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1") for the same PBEKeySpec.
+     */
+    public static byte[] derive(String password, byte[] salt, int iterations, int keyLengthBits) {
+        byte[] key = password.getBytes(StandardCharsets.UTF_8);
+        if (key.length == 0) {
+            // an HMAC key cannot be empty, let the provider handle it
+            return deriveWithFactory(password, salt, iterations, keyLengthBits);
+        }
+        try {
+            Mac mac = macs.get();
+            mac.init(new SecretKeySpec(key, "HmacSHA1"));
+            int length = (keyLengthBits + 7) / 8;
+            int blockLength = mac.getMacLength();
+            byte[] result = new byte[length];
+            byte[] u = new byte[blockLength];
+            byte[] t = new byte[blockLength];
+            for (int block = 1, offset = 0; offset < length; block++, offset += blockLength) {
+                // U1 = HMAC(password, salt || INT(block))
+                mac.update(salt);
+                mac.update((byte) (block >>> 24));
+                mac.update((byte) (block >>> 16));
+                mac.update((byte) (block >>> 8));
+                mac.update((byte) block);
+                mac.doFinal(u, 0);
+                System.arraycopy(u, 0, t, 0, blockLength);
+                // Ui = HMAC(password, Ui-1), T = U1 ^ U2 ^ ... ^ Un
+                for (int i = 1; i < iterations; i++) {
+                    mac.update(u);
+                    mac.doFinal(u, 0);
+                    for (int j = 0; j < blockLength; j++) {
+                        t[j] ^= u[j];
+                    }
+                }
+                System.arraycopy(t, 0, result, offset, Math.min(blockLength, length - offset));
+            }
+            Arrays.fill(key, (byte) 0);
+            return result;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException();
+        }
+    }
+
+    private static byte[] deriveWithFactory(String password, byte[] salt, int iterations, int keyLengthBits) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, keyLengthBits);
+        try {
+            return factories.get().generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
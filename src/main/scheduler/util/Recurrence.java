@@ -0,0 +1,76 @@
+package scheduler.util;
+
+import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Expands a date range and a recurrence pattern into the dates it covers.
+ *
+ * Patterns: daily, weekdays, weekends, or a comma separated list of days such as MON,WED,FRI.
+ */
+public class Recurrence {
+
+    // a single upload may cover at most a year
+    public static final int MAX_DATES = 366;
+
+    private final Set<DayOfWeek> days;
+
+    private Recurrence(Set<DayOfWeek> days) {
+        this.days = days;
+    }
+
+    public static Recurrence parse(String pattern) {
+        switch (pattern.toLowerCase(Locale.ROOT)) {
+            case "daily":
+                return new Recurrence(EnumSet.allOf(DayOfWeek.class));
+            case "weekdays":
+                return new Recurrence(EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY));
+            case "weekends":
+                return new Recurrence(EnumSet.of(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY));
+            default:
+                Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+                for (String day : pattern.split(",")) {
+                    days.add(parseDay(day.trim()));
+                }
+                return new Recurrence(days);
+        }
+    }
+
+    public static Recurrence daily() {
+        return parse("daily");
+    }
+
+    public List<Date> expand(Date start, Date end) {
+        LocalDate first = start.toLocalDate();
+        LocalDate last = end.toLocalDate();
+        if (last.isBefore(first)) {
+            throw new IllegalArgumentException("The end date is before the start date!");
+        }
+        List<Date> dates = new ArrayList<>();
+        for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+            if (days.contains(day.getDayOfWeek())) {
+                if (dates.size() == MAX_DATES) {
+                    throw new IllegalArgumentException("A range can cover at most " + MAX_DATES + " dates!");
+                }
+                dates.add(Date.valueOf(day));
+            }
+        }
+        return dates;
+    }
+
+    private static DayOfWeek parseDay(String day) {
+        String prefix = day.toUpperCase(Locale.ROOT);
+        for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+            if (prefix.length() >= 3 && dayOfWeek.name().startsWith(prefix)) {
+                return dayOfWeek;
+            }
+        }
+        throw new IllegalArgumentException("Unknown day: " + day);
+    }
+}
@@ -1,18 +1,17 @@
 package scheduler.util;
 
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
-import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.KeySpec;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class Util {
 
     // constants for handling password
     private static final int HASH_STRENGTH = 10;
     private static final int KEY_LENGTH = 16;
+    private static final String SPECIAL_CHARACTERS = "!@#?";
 
     public static byte[] generateSalt() {
         // Generate a random cryptographic salt
@@ -23,19 +22,53 @@ public class Util {
     }
 
     public static byte[] generateHash(String password, byte[] salt) {
-        // Specify the hash parameters
-        KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, HASH_STRENGTH, KEY_LENGTH);
-
-        // Generate the hash
-        SecretKeyFactory factory = null;
-        byte[] hash = null;
-        try {
-            factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-            hash = factory.generateSecret(spec).getEncoded();
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException ex) {
-            throw new IllegalStateException();
+        // Generate the hash with the same parameters as PBEKeySpec(password, salt, HASH_STRENGTH, KEY_LENGTH)
+        return HashingService.derive(password, salt, HASH_STRENGTH, KEY_LENGTH);
+    }
+
+    // Generates the hash on the password hashing pool instead of the calling thread
+    public static CompletableFuture<byte[]> generateHashAsync(String password, byte[] salt) {
+        return HashingService.getInstance().deriveAsync(password, salt, HASH_STRENGTH, KEY_LENGTH);
+    }
+
+    // Checks a password against a stored (trimmed) hash on the password hashing pool
+    public static CompletableFuture<Boolean> verifyHashAsync(String password, byte[] salt, byte[] hash) {
+        return HashingService.getInstance().verifyAsync(password, salt, hash, HASH_STRENGTH, KEY_LENGTH);
+    }
+
+    // Returns what is wrong with a password, an empty list means it is strong enough
+    public static List<String> passwordProblems(String password) {
+        boolean length = password.length() > 7;
+        boolean lowerCase = false;
+        boolean upperCase = false;
+        boolean number = false;
+        boolean special = false;
+        for (int i = 0; i < password.length(); i++) {
+            char ch = password.charAt(i);
+            if (Character.isDigit(ch)) {
+                number = true;
+            } else if (Character.isUpperCase(ch)) {
+                upperCase = true;
+            } else if (Character.isLowerCase(ch)) {
+                lowerCase = true;
+            } else if (SPECIAL_CHARACTERS.indexOf(ch) >= 0) {
+                special = true;
+            }
+        }
+        List<String> problems = new ArrayList<>(4);
+        if (!length) {
+            problems.add("Password has to be at least 8 characters long.");
+        }
+        if (!lowerCase || !upperCase) {
+            problems.add("Password has to contain both uppercase and lowercase letter.");
+        }
+        if (!number) {
+            problems.add("Password has to contain both letters and numbers");
+        }
+        if (!special) {
+            problems.add("Password has to contain at least one special character from !, @, #, ?");
         }
-        return hash;
+        return problems;
     }
 
     public static byte[] trim(byte[] bytes)
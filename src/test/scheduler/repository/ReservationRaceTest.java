@@ -0,0 +1,92 @@
+package scheduler.repository;
+
+import org.junit.jupiter.api.Test;
+import scheduler.reservation.Reservation;
+import scheduler.util.Util;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Many patients reserve the last caregiver or the last dose at the same moment, and exactly one of them gets
+ * it. Runs against the in-process backend, which the test task selects with Storage=memory.
+ */
+class ReservationRaceTest {
+
+    private static final int PATIENTS = 32;
+
+    @Test
+    void onlyOneReservationGetsTheLastCaregiver() throws Exception {
+        Date date = Date.valueOf("2099-06-01");
+        String vaccine = "race_caregiver_vaccine";
+        addCaregivers("race_caregiver_c", 1, date);
+        Repositories.vaccines().create(vaccine, PATIENTS);
+
+        List<Reservation> reservations = race("race_caregiver_p", date, vaccine);
+
+        assertEquals(1, count(reservations, Reservation.Status.CONFIRMED));
+        assertEquals(PATIENTS - 1, count(reservations, Reservation.Status.NO_CAREGIVER));
+        assertEquals(PATIENTS - 1, Repositories.vaccines().findDoses(vaccine));
+        assertEquals(0, Repositories.availability().caregivers(date).size());
+    }
+
+    @Test
+    void onlyOneReservationGetsTheLastDose() throws Exception {
+        Date date = Date.valueOf("2099-06-02");
+        String vaccine = "race_dose_vaccine";
+        addCaregivers("race_dose_c", PATIENTS, date);
+        Repositories.vaccines().create(vaccine, 1);
+
+        List<Reservation> reservations = race("race_dose_p", date, vaccine);
+
+        assertEquals(1, count(reservations, Reservation.Status.CONFIRMED));
+        assertEquals(PATIENTS - 1, count(reservations, Reservation.Status.NO_DOSES));
+        assertEquals(0, Repositories.vaccines().findDoses(vaccine));
+        // the caregivers of the rejected reservations are available again
+        assertEquals(PATIENTS - 1, Repositories.availability().caregivers(date).size());
+    }
+
+    private static void addCaregivers(String prefix, int count, Date date) throws Exception {
+        byte[] salt = Util.generateSalt();
+        byte[] hash = Util.generateHash("Race#2099", salt);
+        for (int i = 0; i < count; i++) {
+            Repositories.caregivers().save(prefix + i, salt, hash);
+            Repositories.availability().add(date, prefix + i);
+        }
+    }
+
+    // every patient reserves once, all released together
+    private static List<Reservation> race(String prefix, Date date, String vaccine) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(PATIENTS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Reservation>> futures = new ArrayList<>();
+            for (int i = 0; i < PATIENTS; i++) {
+                String patient = prefix + i;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return Repositories.appointments().reserve(patient, date, vaccine);
+                }));
+            }
+            start.countDown();
+            List<Reservation> reservations = new ArrayList<>();
+            for (Future<Reservation> future : futures) {
+                reservations.add(future.get());
+            }
+            return reservations;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static long count(List<Reservation> reservations, Reservation.Status status) {
+        return reservations.stream().filter(reservation -> reservation.getStatus() == status).count();
+    }
+}